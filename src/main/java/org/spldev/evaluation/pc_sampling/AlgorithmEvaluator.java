@@ -22,11 +22,18 @@
  */
 package org.spldev.evaluation.pc_sampling;
 
+import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
 
 import org.spldev.clauses.*;
 import org.spldev.evaluation.*;
+import org.spldev.evaluation.pc_sampling.io.*;
+import org.spldev.evaluation.pc_sampling.process.*;
 import org.spldev.evaluation.process.*;
+import org.spldev.evaluation.properties.*;
 import org.spldev.util.io.csv.*;
 import org.spldev.util.logging.*;
 
@@ -35,24 +42,90 @@ import org.spldev.util.logging.*;
  */
 public abstract class AlgorithmEvaluator<R, A extends Algorithm<R>> extends Evaluator {
 
+	protected static final Property<Integer> parallelismProperty = new Property<>("parallelism",
+		Property.IntegerConverter, 1);
+	protected static final Property<Integer> memoryBudgetProperty = new Property<>("memory_budget",
+		Property.IntegerConverter, 0);
+	protected static final Property<Integer> runMemoryProperty = new Property<>("run_memory",
+		Property.IntegerConverter, 16384);
+	protected static final Property<Boolean> workerPoolProperty = new Property<>("worker_pool",
+		Property.BooleanConverter, false);
+	protected static final Property<Integer> workerJobsProperty = new Property<>("worker_jobs",
+		Property.IntegerConverter, 50);
+	protected static final Property<Integer> workerHeapProperty = new Property<>("worker_heap",
+		Property.IntegerConverter, 4096);
+	protected static final Property<Integer> prefetchProperty = new Property<>("prefetch_iterations",
+		Property.IntegerConverter, 1);
+	protected static final Property<Boolean> resumeProperty = new Property<>("resume",
+		Property.BooleanConverter, false);
+	protected static final Property<String> distributedModeProperty = new Property<>("distributed_mode",
+		Property.StringConverter, "local");
+	protected static final Property<String> queueDirProperty = new Property<>("queue_dir",
+		Property.StringConverter, "");
+	protected static final Property<String> workerIDProperty = new Property<>("worker_id",
+		Property.StringConverter, "");
+	protected static final Property<Integer> leaseTimeoutProperty = new Property<>("lease_timeout",
+		Property.IntegerConverter, 600000);
+	protected static final Property<Boolean> budgetPolicyProperty = new Property<>("budget_policy",
+		Property.BooleanConverter, false);
+	protected static final Property<Double> budgetQuantileProperty = new Property<>("budget_quantile",
+		Property.DoubleConverter, 0.1);
+	protected static final Property<Integer> budgetMinHistoryProperty = new Property<>("budget_min_history",
+		Property.IntegerConverter, 3);
+	protected static final Property<Double> budgetProbeProperty = new Property<>("budget_probe",
+		Property.DoubleConverter, 0.01);
+	protected static final Property<Integer> resourceSamplingProperty = new Property<>("resource_sampling",
+		Property.IntegerConverter, 100);
+	protected static final Property<Boolean> gcLoggingProperty = new Property<>("gc_logging",
+		Property.BooleanConverter, false);
+
+	private static final String MODE_LOCAL = "local";
+	private static final String MODE_WORKER = "worker";
+	private static final String MODE_COORDINATOR = "coordinator";
+
 	protected List<A> algorithmList;
 
-	private CSVWriter dataCSVWriter, modelCSVWriter, algorithmCSVWriter;
+	private CSVWriter dataCSVWriter, modelCSVWriter, algorithmCSVWriter, metricsCSVWriter;
 
 	protected int algorithmIndex;
-	protected int algorithmIteration;
-	protected Result<R> result;
 	protected CNF modelCNF;
-	protected CNF randomizedModelCNF;
+
+	private RunJournal journal;
+	private WorkQueue queue;
+	private RunStatisticsStore statisticsStore;
+	private RunHistory history;
+	private ResourceMonitor resourceMonitor;
+	private final StageMetrics metrics = new StageMetrics();
+	private final Map<IterationJob<R, A>, Boolean> claims = new ConcurrentHashMap<>();
+	private final Map<String, Thread> runningJobs = new ConcurrentHashMap<>();
 
 	@Override
 	protected void addCSVWriters() {
 		super.addCSVWriters();
+		if (isWorker()) {
+			// Workers only write their journals and samples, the coordinator writes the
+			// CSV files of the evaluation. The metrics of each worker are kept apart.
+			metricsCSVWriter = addCSVWriter(
+				"metrics_" + WorkQueue.getWorkerID(workerIDProperty.getValue()) + ".csv", StageMetrics.CSV_HEADER);
+			return;
+		}
+		// PeakRSS (MB), UserTime, SystemTime, and GCTime (ms) are -1 if they were not
+		// measured (resource_sampling=0, gc_logging=false, or no process observed)
 		dataCSVWriter = addCSVWriter("data.csv", Arrays.asList("ModelID", "AlgorithmID", "SystemIteration",
-			"AlgorithmIteration", "InTime", "NoError", "Time"));
+			"AlgorithmIteration", "InTime", "NoError", "Time", "PredictedTimeout", "PeakRSS", "UserTime",
+			"SystemTime", "GCTime"));
 		modelCSVWriter = addCSVWriter("models.csv", Arrays.asList("ModelID", "Name"));
 		algorithmCSVWriter = addCSVWriter("algorithms.csv",
 			Arrays.asList("ModelID", "AlgorithmID", "Name", "Settings"));
+		metricsCSVWriter = addCSVWriter("metrics.csv", StageMetrics.CSV_HEADER);
+	}
+
+	/**
+	 * @return whether this process is a worker of a distributed evaluation, which
+	 *         does not write data.csv, models.csv, and algorithms.csv
+	 */
+	protected boolean isWorker() {
+		return MODE_WORKER.equals(distributedModeProperty.getValue());
 	}
 
 	@Override
@@ -62,71 +135,538 @@ public abstract class AlgorithmEvaluator<R, A extends Algorithm<R>> extends Eval
 			Logger.logInfo("Start");
 			tabFormatter.incTabLevel();
 
-			final ProcessRunner processRunner = new ProcessRunner();
-			processRunner.setTimeout(config.timeout.getValue());
+			final String mode = distributedModeProperty.getValue();
+			try (RunScheduler scheduler = new RunScheduler(parallelismProperty.getValue(),
+				memoryBudgetProperty.getValue(), runMemoryProperty.getValue());
+				ToolWorkerPool workerPool = new ToolWorkerPool(scheduler, workerJobsProperty.getValue(),
+					workerHeapProperty.getValue(), parallelismProperty.getValue());
+				WorkQueue queue = MODE_LOCAL.equals(mode) ? null : openWorkQueue();
+				RunJournal journal = MODE_COORDINATOR.equals(mode) ? null
+					: queue != null ? new RunJournal(queue.getJournalFile(), true)
+						: new RunJournal(config.outputPath.resolve("journal.tsv"), resumeProperty.getValue());
+				RunStatisticsStore statisticsStore = MODE_COORDINATOR.equals(mode) ? new RunStatisticsStore()
+					: queue != null ? new RunStatisticsStore(queue.getStatisticsFile(), true)
+						: new RunStatisticsStore(config.outputPath.resolve("statistics.tsv"),
+							resumeProperty.getValue());
+				RunHistory history = MODE_COORDINATOR.equals(mode) ? null
+					: new RunHistory(config.outputPath.resolve("run_history.tsv"));
+				ResourceMonitor resourceMonitor = new ResourceMonitor(resourceSamplingProperty.getValue())) {
+				this.history = history;
+				this.resourceMonitor = resourceMonitor;
+				this.journal = journal;
+				this.queue = queue;
+				this.statisticsStore = statisticsStore;
+				workerPool.setTimeout(config.timeout.getValue());
+				workerPool.setResourceMonitor(resourceMonitor);
+				if (queue != null) {
+					queue.setLeaseLossListener(this::cancelJob);
+				}
 
-			final int systemIndexEnd = config.systemNames.size();
+				if (MODE_COORDINATOR.equals(mode)) {
+					mergeSystems();
+				} else {
+					boolean firstPass = true;
+					int openJobs;
+					while ((openJobs = evaluateSystems(scheduler, workerPool, firstPass)) > 0) {
+						Logger.logInfo("Waiting for " + openJobs + " jobs of other workers");
+						queue.await();
+						firstPass = false;
+					}
+				}
+			} catch (final IOException e) {
+				Logger.logError(e);
+			} catch (final InterruptedException e) {
+				Logger.logError(e);
+			} finally {
+				journal = null;
+				queue = null;
+				statisticsStore = null;
+				history = null;
+				resourceMonitor = null;
+			}
+			tabFormatter.setTabLevel(0);
+			Logger.logInfo("Finished");
+		} else {
+			Logger.logInfo("Nothing to do");
+		}
+	}
 
-			systemLoop: for (systemIndex = 0; systemIndex < systemIndexEnd; systemIndex++) {
-				logSystem();
-				tabFormatter.setTabLevel(2);
-				try {
-					algorithmList = prepareAlgorithms();
-				} catch (final Exception e) {
-					Logger.logError(e);
-					continue systemLoop;
+	private WorkQueue openWorkQueue() throws IOException {
+		final String queueDir = queueDirProperty.getValue();
+		return new WorkQueue(queueDir.isEmpty() ? config.outputPath.resolve("queue") : Paths.get(queueDir),
+			workerIDProperty.getValue(), leaseTimeoutProperty.getValue());
+	}
+
+	/**
+	 * Runs all jobs that are neither finished nor claimed by another worker. Each
+	 * job is claimed right before it is prepared or run, so several workers share
+	 * the iterations of a system.
+	 *
+	 * @return the number of jobs that are claimed by other workers and not
+	 *         finished yet
+	 */
+	private int evaluateSystems(RunScheduler scheduler, ToolWorkerPool workerPool, boolean firstPass)
+		throws IOException, InterruptedException {
+		int openJobs = 0;
+		final int systemIndexEnd = config.systemNames.size();
+		for (systemIndex = 0; systemIndex < systemIndexEnd; systemIndex++) {
+			final List<IterationJob<R, A>> iterationJobs = createJobs();
+			if (!firstPass && iterationJobs.stream().allMatch(job -> queue.isDone(getJobKey(job)))) {
+				continue;
+			}
+			if (!prepareSystem(firstPass && !isWorker())) {
+				continue;
+			}
+
+			// Skip iterations that were finished in a previous evaluation or by another
+			// worker
+			final List<IterationJob<R, A>> pendingJobs = new ArrayList<>();
+			final List<IterationJob<R, A>> restoredJobs = new ArrayList<>();
+			for (final IterationJob<R, A> job : iterationJobs) {
+				final String key = getJobKey(job);
+				if ((queue != null) && queue.isDone(key)) {
+					continue;
+				}
+				if (restoreJob(journal, job, false)) {
+					restoredJobs.add(job);
+					if (queue != null) {
+						queue.complete(key);
+					}
+				} else {
+					pendingJobs.add(job);
 				}
-				algorithmIndex = 0;
-				for (final A algorithm : algorithmList) {
-					if (algorithm.getIterations() < 0) {
-						algorithm.setIterations(config.algorithmIterations.getValue());
+			}
+			// Prepare the models of the next iterations while the current ones run
+			final int prefetch = prefetchProperty.getValue();
+			try (Prefetcher<IterationJob<R, A>, CNF> prefetcher = prefetch > 0
+				? new Prefetcher<>(pendingJobs, Math.max(1, parallelismProperty.getValue()) + prefetch,
+					job -> claimJob(job) ? prepareJob(job) : null)
+				: null) {
+				final List<Future<IterationJob<R, A>>> jobs = new ArrayList<>();
+				for (final IterationJob<R, A> job : iterationJobs) {
+					if (pendingJobs.contains(job)) {
+						jobs.add(scheduler.submit(() -> runQueuedJob(job, prefetcher, scheduler, workerPool)));
+					} else if (restoredJobs.contains(job)) {
+						jobs.add(CompletableFuture.completedFuture(job));
+					}
+				}
+				// Write data in the order of the system iterations, regardless of the
+				// order in which the jobs finish
+				for (final Future<IterationJob<R, A>> job : jobs) {
+					try {
+						final IterationJob<R, A> finishedJob = job.get();
+						if (finishedJob == null) {
+							openJobs++;
+						} else if (!isWorker()) {
+							writeJobData(finishedJob);
+						}
+					} catch (final ExecutionException e) {
+						Logger.logError(e.getCause());
 					}
-					writeCSV(algorithmCSVWriter, this::writeAlgorithm);
-					algorithmIndex++;
 				}
+			}
+			claims.clear();
+			writeMetrics();
+		}
+		return openJobs;
+	}
+
+	/**
+	 * Collects the results of all jobs from the journals of the workers that
+	 * finished them and writes them in canonical order. Waits for jobs that are
+	 * not finished yet. Jobs of workers that stopped sending heartbeats are taken
+	 * over by the remaining workers.
+	 */
+	private void mergeSystems() throws IOException, InterruptedException {
+		final int systemIndexEnd = config.systemNames.size();
+		for (systemIndex = 0; systemIndex < systemIndexEnd; systemIndex++) {
+			if (!prepareSystem(true)) {
+				continue;
+			}
+			for (final IterationJob<R, A> job : createJobs()) {
+				final String key = getJobKey(job);
+				String worker;
+				while ((worker = queue.getFinishingWorker(key)) == null) {
+					queue.await();
+				}
+				restoreJob(queue.getJournal(worker), job, true);
+				writeJobData(job);
+			}
+			writeMetrics();
+		}
+	}
+
+	private boolean prepareSystem(boolean writeCSV) {
+		logSystem();
+		// Artifacts of the previous system are not needed anymore
+		ArtifactCache.clear();
+		tabFormatter.setTabLevel(2);
+		try {
+			algorithmList = prepareAlgorithms(config.tempPath);
+		} catch (final Exception e) {
+			Logger.logError(e);
+			return false;
+		}
+		algorithmIndex = 0;
+		for (final A algorithm : algorithmList) {
+			if (algorithm.getIterations() < 0) {
+				algorithm.setIterations(config.algorithmIterations.getValue());
+			}
+			if (writeCSV) {
+				writeCSV(algorithmCSVWriter, this::writeAlgorithm);
+			}
+			algorithmIndex++;
+		}
+		try {
+			final StageMetrics.Timer modelTimer = metrics.start(config.systemIDs.get(systemIndex), "prepare_model");
+			try {
+				modelCNF = prepareModel();
+			} finally {
+				modelTimer.stop();
+			}
+			if (writeCSV) {
+				writeModelCSV();
+			}
+		} catch (final Exception e) {
+			Logger.logError(e);
+			return false;
+		}
+		return true;
+	}
+
+	private List<IterationJob<R, A>> createJobs() {
+		final List<IterationJob<R, A>> iterationJobs = new ArrayList<>();
+		for (int systemIteration = 1; systemIteration <= config.systemIterations.getValue(); systemIteration++) {
+			iterationJobs.add(new IterationJob<>(systemIndex, systemIteration,
+				config.tempPath.resolve(config.systemIDs.get(systemIndex) + "_" + systemIteration),
+				statisticsStore.get(config.systemIDs.get(systemIndex), systemIteration)));
+		}
+		return iterationJobs;
+	}
+
+	private String getJobKey(IterationJob<R, A> job) {
+		return config.systemIDs.get(job.getSystemIndex()) + "_" + job.getSystemIteration();
+	}
+
+	private void writeJobData(IterationJob<R, A> job) {
+		final List<AlgorithmRun<R>> runs = new ArrayList<>(job.getRuns());
+		runs.sort(Comparator.<AlgorithmRun<R>> comparingInt(AlgorithmRun::getAlgorithmIndex)
+			.thenComparingInt(AlgorithmRun::getAlgorithmIteration));
+		for (final AlgorithmRun<R> run : runs) {
+			writeCSV(dataCSVWriter, writer -> writeData(writer, run.getData()));
+		}
+	}
+
+	/**
+	 * Runs the given job, if it can be claimed. The job is cancelled, if this
+	 * worker loses its lease, so it neither overwrites the results of the worker
+	 * that took over nor marks the job as finished.
+	 *
+	 * @return the finished job or {@code null}, if another worker claimed it or
+	 *         took it over
+	 */
+	private IterationJob<R, A> runQueuedJob(IterationJob<R, A> job, Prefetcher<IterationJob<R, A>, CNF> prefetcher,
+		RunScheduler scheduler, ToolWorkerPool workerPool) throws Exception {
+		if (queue == null) {
+			return runJob(job, prefetcher, scheduler, workerPool);
+		}
+		if (!claimJob(job)) {
+			if (prefetcher != null) {
+				// Free the slot of the job, which was skipped by the prefetcher
 				try {
-					modelCNF = prepareModel();
-					writeCSV(modelCSVWriter, this::writeModel);
-				} catch (final Exception e) {
-					Logger.logError(e);
-					continue systemLoop;
+					prefetcher.take(job);
+				} finally {
+					prefetcher.release(job);
 				}
-				for (systemIteration = 1; systemIteration <= config.systemIterations.getValue(); systemIteration++) {
+			}
+			return null;
+		}
+		final String key = getJobKey(job);
+		runningJobs.put(key, Thread.currentThread());
+		try {
+			runJob(job, prefetcher, scheduler, workerPool);
+		} catch (final InterruptedException e) {
+			if (isCancelled(key)) {
+				Logger.logError("Cancelled job " + key + " after losing its lease");
+				queue.release(key);
+				return null;
+			}
+			queue.release(key);
+			throw e;
+		} catch (final Exception e) {
+			// Do not hand a job that fails deterministically to other workers
+			if (isCancelled(key)) {
+				queue.release(key);
+			} else {
+				queue.complete(key);
+			}
+			throw e;
+		} finally {
+			runningJobs.remove(key);
+		}
+		if (isCancelled(key) || !queue.complete(key)) {
+			queue.release(key);
+			return null;
+		}
+		return job;
+	}
+
+	/**
+	 * Interrupts the job whose lease was lost, if it is still running.
+	 */
+	private void cancelJob(String key) {
+		runningJobs.computeIfPresent(key, (k, thread) -> {
+			thread.interrupt();
+			return thread;
+		});
+	}
+
+	/**
+	 * @return whether the given job was cancelled. Clears the interrupt of the
+	 *         cancellation, so the thread can run further jobs.
+	 */
+	private boolean isCancelled(String key) {
+		if (queue.isLeaseLost(key)) {
+			Thread.interrupted();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Stops a job before it writes results, if the lease of the job was lost.
+	 */
+	private void checkLease(IterationJob<R, A> job) throws InterruptedException {
+		if ((queue != null) && queue.isLeaseLost(getJobKey(job))) {
+			throw new InterruptedException("Lost lease of job " + getJobKey(job));
+		}
+	}
+
+	/**
+	 * Claims the given job in the work queue. The first call decides, so the
+	 * prefetcher and the scheduler agree on whether the job is run.
+	 *
+	 * @return whether this worker runs the job
+	 */
+	private boolean claimJob(IterationJob<R, A> job) {
+		if (queue == null) {
+			return true;
+		}
+		return claims.computeIfAbsent(job, j -> {
+			try {
+				return queue.claim(getJobKey(j));
+			} catch (final IOException e) {
+				Logger.logError(e);
+				return false;
+			}
+		});
+	}
+
+	private CNF prepareJob(IterationJob<R, A> job) throws Exception {
+		Files.createDirectories(job.getTempDir());
+		final StageMetrics.Timer timer = metrics.start(config.systemIDs.get(job.getSystemIndex()), "adapt_model");
+		try {
+			return adaptModel(job);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Writes the latency percentiles of all stages measured since the last call.
+	 */
+	private void writeMetrics() {
+		for (final List<Object> row : metrics.drain()) {
+			writeCSV(metricsCSVWriter, writer -> row.forEach(writer::addValue));
+		}
+	}
+
+	private void recordRunMetrics(AlgorithmRun<R> run) {
+		final Object systemID = config.systemIDs.get(run.getSystemIndex());
+		metrics.record(systemID, "run", run.getResult().getTime() * 1_000_000L);
+		if (run.getStartupTime() > 0) {
+			metrics.record(systemID, "launch", run.getStartupTime() * 1_000_000L);
+		}
+		if (run.getParseTime() >= 0) {
+			metrics.record(systemID, "parse_result", run.getParseTime());
+		}
+	}
+
+	private IterationJob<R, A> runJob(IterationJob<R, A> job, Prefetcher<IterationJob<R, A>, CNF> prefetcher,
+		RunScheduler scheduler, ToolWorkerPool workerPool) throws Exception {
+		final InProcessRunner inProcessRunner = new InProcessRunner();
+		inProcessRunner.setTimeout(config.timeout.getValue());
+		try {
+			job.setRandomizedModel(prefetcher != null ? prefetcher.take(job) : prepareJob(job));
+			final List<A> algorithms = prepareAlgorithms(job.getTempDir());
+
+			final ProcessRunner processRunner = new ProcessRunner();
+			processRunner.setTimeout(config.timeout.getValue());
+
+			// Run algorithms in the order of their phases, so that dependent algorithms
+			// can use the statistics of their reference algorithms
+			algorithmLoop: for (final int algorithmIndex : getExecutionOrder(algorithms)) {
+				final A algorithm = algorithms.get(algorithmIndex);
+				if (algorithm.getIterations() < 0) {
+					algorithm.setIterations(config.algorithmIterations.getValue());
+				}
+				for (int algorithmIteration = 1; algorithmIteration <= algorithm
+					.getIterations(); algorithmIteration++) {
+					final AlgorithmRun<R> run = new AlgorithmRun<>(job.getSystemIndex(), job.getSystemIteration(),
+						algorithmIndex, algorithmIteration, algorithm);
+					final RunJournal.Entry entry = getJournalEntry(journal, run);
+					if (entry != null) {
+						restoreRun(job, run, entry);
+						continue;
+					}
 					try {
-						randomizedModelCNF = adaptModel();
+						adaptAlgorithm(job, run);
 					} catch (final Exception e) {
 						Logger.logError(e);
-						continue systemLoop;
+						continue algorithmLoop;
 					}
-					config.algorithmIterations.getValue();
-					algorithmIndex = -1;
-					algorithmLoop: for (final A algorithm : algorithmList) {
-						algorithmIndex++;
-						for (algorithmIteration = 1; algorithmIteration <= algorithm
-							.getIterations(); algorithmIteration++) {
-							try {
-								adaptAlgorithm(algorithm);
-							} catch (final Exception e) {
-								Logger.logError(e);
-								continue algorithmLoop;
-							}
-							try {
-								logRun();
-								result = processRunner.run(algorithm);
-								writeCSV(dataCSVWriter, this::writeData);
-							} catch (final Exception e) {
-								Logger.logError(e);
-								continue algorithmLoop;
+					try {
+						logRun(run);
+						final long budget = getBudget(job, run);
+						run.setBudget(budget);
+						inProcessRunner.setTimeout(budget);
+						processRunner.setTimeout(budget);
+						final Path gcLogFile = setGCLogFile(job, algorithm);
+						final InProcessAlgorithm<R> inProcessAlgorithm = getInProcessAlgorithm(algorithm);
+						if (inProcessAlgorithm != null) {
+							// In-process runs use the heap of this JVM, but still reserve run_memory
+							run.setResult(scheduler.run(() -> inProcessRunner.run(inProcessAlgorithm)));
+							run.setStartupTime(0);
+							run.setAlgorithmTime(run.getResult().getTime());
+						} else if (workerPoolProperty.getValue() && usesWorkerPool(algorithm)) {
+							// The pool reserves the memory of its workers itself
+							run.setResult(workerPool.run(algorithm, run, budget));
+						} else {
+							run.setResult(scheduler.run(() -> {
+								// Processes of the run are identified by the job directory in their
+								// command line
+								final ResourceMonitor.Measurement measurement = resourceMonitor
+									.start(job.getTempDir());
+								try {
+									return processRunner.run(algorithm);
+								} finally {
+									run.setResourceUsage(measurement);
+								}
+							}));
+							if (gcLogFile != null) {
+								run.setGCTime(ResourceMonitor.readGCPauseTime(gcLogFile));
+								Files.deleteIfExists(gcLogFile);
 							}
 						}
+						run.setPredictedTimeout(
+							(budget < config.timeout.getValue()) && !run.getResult().isTerminatedInTime());
+						checkLease(job);
+						addHistory(job, run);
+						recordRunMetrics(run);
+						final StageMetrics.Timer timer = metrics.start(config.systemIDs.get(run.getSystemIndex()),
+							"process_result");
+						try {
+							processResult(job, run);
+						} finally {
+							timer.stop();
+						}
+						run.setData(getData(run));
+						try {
+							journal.add(config.systemIDs.get(run.getSystemIndex()), run, run.getResult().getTime(),
+								getResultFile(run), run.getData());
+						} catch (final IOException e) {
+							Logger.logError(e);
+						}
+						job.addRun(run);
+					} catch (final InterruptedException e) {
+						throw e;
+					} catch (final Exception e) {
+						Logger.logError(e);
+						continue algorithmLoop;
 					}
 				}
 			}
-			tabFormatter.setTabLevel(0);
-			Logger.logInfo("Finished");
-		} else {
-			Logger.logInfo("Nothing to do");
+		} finally {
+			inProcessRunner.close();
+			deleteTempDir(job.getTempDir());
+			if (prefetcher != null) {
+				prefetcher.release(job);
+			}
+		}
+		return job;
+	}
+
+	/**
+	 * @return the full timeout or, if the run is predicted to time out based on the
+	 *         run history, a fraction of it
+	 */
+	private long getBudget(IterationJob<R, A> job, AlgorithmRun<R> run) {
+		final long timeout = config.timeout.getValue();
+		if (budgetPolicyProperty.getValue() && (job.getRandomizedModel() != null)
+			&& history.isHopeless(config.systemNames.get(run.getSystemIndex()), run.getAlgorithm().getFullName(),
+				job.getRandomizedModel().getVariableMap().size(), job.getRandomizedModel().getClauses().size(),
+				timeout, budgetQuantileProperty.getValue(), budgetMinHistoryProperty.getValue())) {
+			final long budget = Math.min(timeout, Math.max(1000, (long) (timeout * budgetProbeProperty.getValue())));
+			Logger.logInfo("\t\tPredicted timeout, reducing budget to " + budget + "ms");
+			return budget;
+		}
+		return timeout;
+	}
+
+	/**
+	 * Records the time of the given run. Runs that were stopped at a reduced
+	 * budget are not recorded, as they only show that the prediction held.
+	 */
+	private void addHistory(IterationJob<R, A> job, AlgorithmRun<R> run) {
+		if (!run.isPredictedTimeout() && (job.getRandomizedModel() != null)) {
+			try {
+				history.add(config.systemNames.get(run.getSystemIndex()), run.getAlgorithm().getFullName(),
+					job.getRandomizedModel().getVariableMap().size(), job.getRandomizedModel().getClauses().size(),
+					run.getResult().getTime(), run.getResult().isTerminatedInTime(), run.getBudget());
+			} catch (final IOException e) {
+				Logger.logError(e);
+			}
+		}
+	}
+
+	/**
+	 * Lets the given algorithm log its GC events to a file in the job directory,
+	 * if GC logging is enabled and supported.
+	 *
+	 * @return the GC log file or {@code null}
+	 */
+	private Path setGCLogFile(IterationJob<R, A> job, A algorithm) {
+		if (algorithm instanceof GCLoggingAlgorithm) {
+			final Path gcLogFile = gcLoggingProperty.getValue() ? job.getTempDir().resolve("gc.log") : null;
+			((GCLoggingAlgorithm) algorithm).setGCLogFile(gcLogFile);
+			return gcLogFile;
 		}
+		return null;
+	}
+
+	private List<Integer> getExecutionOrder(List<A> algorithms) {
+		final List<Integer> order = new ArrayList<>(algorithms.size());
+		for (int i = 0; i < algorithms.size(); i++) {
+			order.add(i);
+		}
+		order.sort(Comparator.comparingInt(i -> getPhase(algorithms.get(i))));
+		return order;
+	}
+
+	private void deleteTempDir(Path tempDir) {
+		if (Files.exists(tempDir)) {
+			try (Stream<Path> files = Files.walk(tempDir)) {
+				for (final Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+					Files.deleteIfExists(file);
+				}
+			} catch (final IOException e) {
+				Logger.logError(e);
+			}
+		}
+	}
+
+	protected void writeModelCSV() {
+		writeCSV(modelCSVWriter, this::writeModel);
 	}
 
 	protected void writeModel(CSVWriter modelCSVWriter) {
@@ -145,45 +685,184 @@ public abstract class AlgorithmEvaluator<R, A extends Algorithm<R>> extends Eval
 		algorithmCSVWriter.addValue(algorithm.getParameterSettings());
 	}
 
-	protected void writeData(CSVWriter dataCSVWriter) {
-		dataCSVWriter.addValue(config.systemIDs.get(systemIndex));
-		dataCSVWriter.addValue(algorithmIndex);
-		dataCSVWriter.addValue(systemIteration);
-		dataCSVWriter.addValue(algorithmIteration);
-		dataCSVWriter.addValue(result.isTerminatedInTime());
-		dataCSVWriter.addValue(result.isNoError());
-		dataCSVWriter.addValue(result.getTime());
+	/**
+	 * Restores the runs of the given job from the journal, if all of them are
+	 * finished. If partial is set, restores the finished runs in any case and
+	 * reports each run that is missing or whose result file was changed.
+	 *
+	 * @return whether all runs of the job are finished
+	 */
+	private boolean restoreJob(RunJournal journal, IterationJob<R, A> job, boolean partial) {
+		final List<AlgorithmRun<R>> runs = new ArrayList<>();
+		final List<RunJournal.Entry> entries = new ArrayList<>();
+		int algorithmIndex = 0;
+		for (final A algorithm : algorithmList) {
+			for (int algorithmIteration = 1; algorithmIteration <= algorithm
+				.getIterations(); algorithmIteration++) {
+				final AlgorithmRun<R> run = new AlgorithmRun<>(job.getSystemIndex(), job.getSystemIteration(),
+					algorithmIndex, algorithmIteration, algorithm);
+				final RunJournal.Entry entry = getJournalEntry(journal, run);
+				if (entry == null) {
+					if (partial) {
+						Logger.logError("Job " + getJobKey(job) + ": run " + algorithmIndex + "_" + algorithmIteration
+							+ (journal.contains(config.systemIDs.get(run.getSystemIndex()), run)
+								? " does not match its result file"
+								: " is missing"));
+						continue;
+					}
+					return false;
+				}
+				runs.add(run);
+				entries.add(entry);
+			}
+			algorithmIndex++;
+		}
+		for (int i = 0; i < runs.size(); i++) {
+			restoreRun(job, runs.get(i), entries.get(i));
+		}
+		return true;
+	}
+
+	private RunJournal.Entry getJournalEntry(RunJournal journal, AlgorithmRun<R> run) {
+		return journal.get(config.systemIDs.get(run.getSystemIndex()), run, getResultFile(run));
+	}
+
+	private void restoreRun(IterationJob<R, A> job, AlgorithmRun<R> run, RunJournal.Entry entry) {
+		run.setResultSize(entry.getResultSize());
+		run.setData(entry.getData());
+		restoreResult(job, run, entry);
+		job.addRun(run);
 	}
 
-	private void logRun() {
+	private List<String> getData(AlgorithmRun<R> run) {
+		final List<Object> values = new ArrayList<>();
+		addData(values, run);
+		final List<String> data = new ArrayList<>(values.size());
+		for (final Object value : values) {
+			data.add(String.valueOf(value));
+		}
+		return data;
+	}
+
+	private void writeData(CSVWriter dataCSVWriter, List<String> data) {
+		for (final String value : data) {
+			dataCSVWriter.addValue(value);
+		}
+	}
+
+	protected void addData(List<Object> data, AlgorithmRun<R> run) {
+		final Result<R> result = run.getResult();
+		data.add(config.systemIDs.get(run.getSystemIndex()));
+		data.add(run.getAlgorithmIndex());
+		data.add(run.getSystemIteration());
+		data.add(run.getAlgorithmIteration());
+		data.add(result.isTerminatedInTime());
+		data.add(result.isNoError());
+		data.add(result.getTime());
+		data.add(run.isPredictedTimeout());
+		data.add(run.getPeakRSS());
+		data.add(run.getUserTime());
+		data.add(run.getSystemTime());
+		data.add(run.getGCTime());
+	}
+
+	/**
+	 * @return the file to which the result of the given run is written or
+	 *         {@code null}, if the result is not stored
+	 */
+	protected Path getResultFile(AlgorithmRun<R> run) {
+		return null;
+	}
+
+	/**
+	 * Within a system iteration, algorithms of a lower phase run before algorithms
+	 * of a higher phase. Algorithms of the same phase run in the configured order.
+	 */
+	protected int getPhase(A algorithm) {
+		return 0;
+	}
+
+	/**
+	 * @return the persistent statistics of all system iterations
+	 */
+	protected RunStatisticsStore getStatisticsStore() {
+		return statisticsStore;
+	}
+
+	/**
+	 * @return the latency histograms of the stages of the current evaluation
+	 */
+	protected StageMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Restores the state that depends on the result of a run that was finished in
+	 * a previous evaluation.
+	 */
+	protected void restoreResult(IterationJob<R, A> job, AlgorithmRun<R> run, RunJournal.Entry entry) {
+	}
+
+	private void logRun(AlgorithmRun<R> run) {
 		final StringBuilder sb = new StringBuilder();
-		sb.append(systemIndex + 1);
+		sb.append(run.getSystemIndex() + 1);
 		sb.append("/");
 		sb.append(config.systemNames.size());
 		sb.append(" | ");
-		sb.append(systemIteration);
+		sb.append(run.getSystemIteration());
 		sb.append("/");
 		sb.append(config.systemIterations.getValue());
 		sb.append(" | (");
-		sb.append(algorithmIndex + 1);
+		sb.append(run.getAlgorithmIndex() + 1);
 		sb.append("/");
 		sb.append(algorithmList.size());
 		sb.append(") ");
-		sb.append(algorithmList.get(algorithmIndex).getFullName());
+		sb.append(run.getAlgorithm().getFullName());
 		sb.append(" | ");
-		sb.append(algorithmIteration);
+		sb.append(run.getAlgorithmIteration());
 		sb.append("/");
-		sb.append(algorithmList.get(algorithmIndex).getIterations());
+		sb.append(run.getAlgorithm().getIterations());
 		Logger.logInfo(sb.toString());
 	}
 
 	protected abstract CNF prepareModel() throws Exception;
 
-	protected abstract CNF adaptModel() throws Exception;
+	/**
+	 * Creates the randomized model of a system iteration and writes all files
+	 * required by the algorithms into the job's temporary directory.
+	 */
+	protected abstract CNF adaptModel(IterationJob<R, A> job) throws Exception;
 
-	protected abstract void adaptAlgorithm(A algorithm) throws Exception;
+	protected abstract void adaptAlgorithm(IterationJob<R, A> job, AlgorithmRun<R> run) throws Exception;
 
-	protected abstract List<A> prepareAlgorithms() throws Exception;
+	/**
+	 * Creates new algorithm instances that read from and write to the given
+	 * directory.
+	 */
+	protected abstract List<A> prepareAlgorithms(Path tempDir) throws Exception;
+
+	/**
+	 * @return the given algorithm, if it should be executed within this JVM, or
+	 *         {@code null}, if it should be executed in a separate process.
+	 */
+	protected InProcessAlgorithm<R> getInProcessAlgorithm(A algorithm) {
+		return null;
+	}
+
+	/**
+	 * @return whether the given algorithm starts a Java tool that can be executed
+	 *         in a reusable {@link ToolWorker} JVM, if the worker pool is enabled.
+	 */
+	protected boolean usesWorkerPool(A algorithm) {
+		return false;
+	}
+
+	/**
+	 * Called within the job directly after a run has finished and before the next
+	 * run of the same job starts.
+	 */
+	protected void processResult(IterationJob<R, A> job, AlgorithmRun<R> run) throws Exception {
+	}
 
 	public CSVWriter getDataCSVWriter() {
 		return dataCSVWriter;
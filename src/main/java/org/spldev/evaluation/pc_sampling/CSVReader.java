@@ -25,12 +25,16 @@ package org.spldev.evaluation.pc_sampling;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.*;
 
 import org.spldev.analysis.sat4j.twise.*;
 import org.spldev.clauses.*;
 import org.spldev.clauses.LiteralList.*;
 import org.spldev.evaluation.*;
+import org.spldev.evaluation.pc_sampling.coverage.*;
+import org.spldev.evaluation.pc_sampling.io.*;
+import org.spldev.evaluation.properties.*;
 import org.spldev.formula.io.dimacs.*;
 import org.spldev.formula.io.textual.*;
 import org.spldev.formula.io.textual.NodeReader.*;
@@ -42,8 +46,6 @@ import org.spldev.util.data.*;
 import org.spldev.util.io.*;
 import org.spldev.util.io.csv.*;
 import org.spldev.util.logging.*;
-import org.spldev.util.tree.*;
-import org.spldev.util.tree.visitor.*;
 
 public class CSVReader extends Evaluator {
 
@@ -52,15 +54,14 @@ public class CSVReader extends Evaluator {
 		return "eval-csv-reader";
 	}
 
-	protected CSVWriter evaluationWriter;
-
-	private CNF modelCNF;
+	protected static final Property<Integer> threadsProperty = new Property<>("bug_threads",
+		Property.IntegerConverter, 0);
 
-	private List<int[]> sampleArguments;
+	protected CSVWriter evaluationWriter;
 
 	private final HashMap<String, List<PC>> map = new HashMap<>();
 
-	private class PC {
+	private static class PC {
 		Formula formula;
 		String formulaString;
 	}
@@ -69,13 +70,10 @@ public class CSVReader extends Evaluator {
 	protected void addCSVWriters() {
 		super.addCSVWriters();
 		evaluationWriter = addCSVWriter("coverage.csv", Arrays.asList("ModelID", "ModelName", "SystemIteration",
-			"AlgorithmID", "AlgorithmIteration", "PresenceCondition", "Covered"));
+			"AlgorithmID", "AlgorithmIteration", "PresenceCondition", "Covered", "FirstConfiguration"));
 	}
 
-	protected final HashMap<String, PresenceConditionManager> expressionMap = new HashMap<>();
-
-	@Override
-	public void evaluate() {
+	private static NodeReader createNodeReader() {
 		final NodeReader nodeReader = new NodeReader();
 		final Symbols symbols = new Symbols(Arrays.asList( //
 			new Pair<>(Operator.NOT, "!"), //
@@ -85,35 +83,71 @@ public class CSVReader extends Evaluator {
 		nodeReader.setSymbols(symbols);
 		nodeReader.setIgnoreMissingFeatures(ErrorHandling.REMOVE);
 		nodeReader.setIgnoreUnparsableSubExpressions(ErrorHandling.REMOVE);
+		return nodeReader;
+	}
 
-		final Path p = Paths.get("bugs.csv");
-		List<String> lines;
+	@Override
+	public void evaluate() {
+		final int threads = threadsProperty.getValue();
+		final ExecutorService executor = Executors
+			.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
 		try {
-			lines = Files.readAllLines(p);
+			if (readBugs(executor)) {
+				evaluateSystems(executor);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 
-			for (final String line : lines) {
+	/**
+	 * Reads bugs.csv and converts each distinct formula to DNF once.
+	 */
+	private boolean readBugs(ExecutorService executor) {
+		final HashMap<String, PC> pcs = new LinkedHashMap<>();
+		final Path p = Paths.get("bugs.csv");
+		try {
+			for (final String line : Files.readAllLines(p)) {
 				final String[] values = line.split(";");
 				final String systemName = values[0];
 				final String formulaString = values[4];
-				System.out.println(systemName);
-				final Formula formula = nodeReader.read(formulaString).flatMap(Formulas::toDNF)
-					.orElse(Logger::logProblems);
-				System.out.println(Trees.traverse(formula, new TreePrinter()).get());
-				List<PC> list = map.get(systemName);
-				if (list == null) {
-					list = new ArrayList<>();
-					map.put(systemName, list);
-				}
-				final PC pc = new PC();
-				pc.formula = formula;
-				pc.formulaString = formulaString;
-				list.add(pc);
+				final PC pc = pcs.computeIfAbsent(formulaString, key -> {
+					final PC newPC = new PC();
+					newPC.formulaString = key;
+					return newPC;
+				});
+				map.computeIfAbsent(systemName, key -> new ArrayList<>()).add(pc);
 			}
 		} catch (final IOException e) {
 			Logger.logError(e);
-			return;
+			return false;
 		}
 
+		final ThreadLocal<NodeReader> nodeReaders = ThreadLocal.withInitial(CSVReader::createNodeReader);
+		final List<Callable<Void>> tasks = new ArrayList<>(pcs.size());
+		for (final PC pc : pcs.values()) {
+			tasks.add(() -> {
+				pc.formula = nodeReaders.get().read(pc.formulaString).flatMap(Formulas::toDNF)
+					.orElse(Logger::logProblems);
+				return null;
+			});
+		}
+		try {
+			for (final Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (final ExecutionException e) {
+			Logger.logError(e.getCause());
+			return false;
+		} catch (final InterruptedException e) {
+			Logger.logError(e);
+			return false;
+		}
+		Logger.logInfo("Converted " + pcs.size() + " distinct bug formulas");
+		return true;
+	}
+
+	private void evaluateSystems(ExecutorService executor) {
 		tabFormatter.setTabLevel(0);
 		if (config.systemIterations.getValue() > 0) {
 			Logger.logInfo("Start");
@@ -130,7 +164,27 @@ public class CSVReader extends Evaluator {
 			Collections.sort(dirList, (p1, p2) -> p1.getFileName().toString().compareTo(p2.getFileName().toString()));
 
 			tabFormatter.incTabLevel();
-			dirList.forEach(this::readSamples);
+			final List<Future<List<Object[]>>> results = new ArrayList<>(dirList.size());
+			for (final Path sampleDir : dirList) {
+				results.add(executor.submit(() -> readSamples(sampleDir)));
+			}
+			// Write the buffered rows of each system in the order of the directories
+			for (final Future<List<Object[]>> result : results) {
+				try {
+					for (final Object[] row : result.get()) {
+						evaluationWriter.createNewLine();
+						for (final Object value : row) {
+							evaluationWriter.addValue(value);
+						}
+					}
+					evaluationWriter.flush();
+				} catch (final ExecutionException e) {
+					Logger.logError(e.getCause());
+				} catch (final InterruptedException e) {
+					Logger.logError(e);
+					break;
+				}
+			}
 			tabFormatter.setTabLevel(0);
 			Logger.logInfo("Finished");
 		} else {
@@ -138,110 +192,91 @@ public class CSVReader extends Evaluator {
 		}
 	}
 
-	private void readSamples(Path sampleDir) {
-		tabFormatter.setTabLevel(1);
-		try {
-			systemIndex = Integer.parseInt(sampleDir.getFileName().toString());
-		} catch (final Exception e) {
-			Logger.logError(e);
-			return;
-		}
-
+	/**
+	 * Evaluates all bugs of a system against its samples.
+	 *
+	 * @return the rows for coverage.csv
+	 */
+	private List<Object[]> readSamples(Path sampleDir) throws IOException {
+		final int systemIndex = Integer.parseInt(sampleDir.getFileName().toString());
 		final String systemName = config.systemNames.get(config.systemIDs.indexOf(systemIndex));
+		final List<PC> list = map.get(systemName);
+		if (list == null) {
+			return Collections.emptyList();
+		}
 		Logger.logInfo("System " + (systemIndex + 1) + ": " + systemName);
-		Logger.logInfo("Preparing...");
-		tabFormatter.incTabLevel();
 
 		final DIMACSFormat format = new DIMACSFormat();
 		final Path modelFile = sampleDir.resolve("model." + format.getFileExtension());
 		final Result<CNF> parseResult = FileHandler.load(modelFile, format).map(Clauses::convertToCNF);
 		if (parseResult.isEmpty()) {
 			Logger.logProblems(parseResult.getProblems());
-			return;
+			return Collections.emptyList();
 		}
-
-		modelCNF = parseResult.get();
+		final CNF modelCNF = parseResult.get();
+		final int variableCount = modelCNF.getVariableMap().size();
 
 		List<Path> sampleFileList;
 		try (Stream<Path> fileStream = Files.list(sampleDir)) {
 			sampleFileList = fileStream.filter(Files::isReadable).filter(Files::isRegularFile)
-				.filter(file -> file.getFileName().toString().endsWith(".sample")).collect(Collectors.toList());
-		} catch (final IOException e) {
-			Logger.logError(e);
-			tabFormatter.decTabLevel();
-			return;
+				.filter(SampleFile::isSampleFile).collect(Collectors.toList());
 		}
 		Collections.sort(sampleFileList,
 			(p1, p2) -> p1.getFileName().toString().compareTo(p2.getFileName().toString()));
 
-		tabFormatter.decTabLevel();
-		Logger.logInfo("Reading Samples...");
-		tabFormatter.incTabLevel();
-		final List<List<? extends LiteralList>> samples = new ArrayList<>(sampleFileList.size());
-		sampleArguments = new ArrayList<>(sampleFileList.size());
+		// Index from each literal to the configurations that contain it
+		final List<SampleMatrix> sampleMatrices = new ArrayList<>(sampleFileList.size());
+		final List<int[]> sampleArguments = new ArrayList<>(sampleFileList.size());
 		for (final Path sampleFile : sampleFileList) {
-			final List<LiteralList> sample;
-			int[] argumentValues;
 			try {
-				final String fileName = sampleFile.getFileName().toString();
-				final String[] arguments = fileName.substring(0, fileName.length() - ".sample".length()).split("_");
-				sample = Files.lines(sampleFile).map(this::parseConfiguration).collect(Collectors.toList());
-
-				argumentValues = new int[3];
+				final String[] arguments = SampleFile.getRunName(sampleFile).split("_");
+				final int[] argumentValues = new int[3];
 				argumentValues[0] = Integer.parseInt(arguments[1]);
 				argumentValues[1] = Integer.parseInt(arguments[2]);
 				argumentValues[2] = Integer.parseInt(arguments[3]);
-
+				sampleMatrices
+					.add(new SampleMatrix(SampleFile.readConfigurations(sampleFile, variableCount), variableCount));
+				sampleArguments.add(argumentValues);
 			} catch (final Exception e) {
 				Logger.logError(e);
-				continue;
 			}
-			samples.add(sample);
-			sampleArguments.add(argumentValues);
 		}
-		final List<PC> list = map.get(systemName);
-		if (list != null) {
-			tabFormatter.incTabLevel();
-			for (final PC pc : list) {
-				CNF dnf = null;
+
+		// Each distinct formula is mapped to the variables of this system only once
+		final IdentityHashMap<PC, Optional<CNF>> dnfCache = new IdentityHashMap<>();
+		final List<Object[]> rows = new ArrayList<>(list.size() * sampleMatrices.size());
+		for (final PC pc : list) {
+			final CNF dnf = dnfCache.computeIfAbsent(pc, key -> {
 				try {
-					dnf = toCNF(pc.formula, modelCNF.getVariableMap());
-					Logger.logInfo(dnf.getClauses());
+					return Optional.of(toCNF(key.formula, modelCNF.getVariableMap()));
 				} catch (final Exception e) {
 					Logger.logError(e.getMessage());
+					return Optional.empty();
 				}
-				tabFormatter.incTabLevel();
-				int i = 0;
-				for (final List<? extends LiteralList> sample : samples) {
-					final int[] args = sampleArguments.get(i++);
-					evaluationWriter.createNewLine();
-					evaluationWriter.addValue(systemIndex);
-					evaluationWriter.addValue(systemName);
-					evaluationWriter.addValue(args[0]);
-					evaluationWriter.addValue(args[1]);
-					evaluationWriter.addValue(args[2]);
-					evaluationWriter.addValue(pc.formulaString);
-					if (dnf == null) {
-						evaluationWriter.addValue("unparsable");
-					} else {
-						boolean covered = false;
-						loop: for (final LiteralList configuration : sample) {
-							for (final LiteralList clause : dnf.getClauses()) {
-								if (configuration.containsAll(clause)) {
-									covered = true;
-									break loop;
-								}
-							}
-						}
-						evaluationWriter.addValue(covered);
-					}
-					evaluationWriter.flush();
+			}).orElse(null);
+			for (int i = 0; i < sampleMatrices.size(); i++) {
+				final int[] args = sampleArguments.get(i);
+				final Object[] row = new Object[8];
+				row[0] = systemIndex;
+				row[1] = systemName;
+				row[2] = args[0];
+				row[3] = args[1];
+				row[4] = args[2];
+				row[5] = pc.formulaString;
+				if (dnf == null) {
+					row[6] = "unparsable";
+					row[7] = -1;
+				} else {
+					// A configuration covers the DNF if it contains all literals of one clause
+					final int firstConfiguration = BitVectors
+						.nextSetBit(sampleMatrices.get(i).getColumn(dnf.getClauses()), 0);
+					row[6] = firstConfiguration >= 0;
+					row[7] = firstConfiguration;
 				}
-				tabFormatter.decTabLevel();
+				rows.add(row);
 			}
-			tabFormatter.decTabLevel();
 		}
-		tabFormatter.decTabLevel();
+		return rows;
 	}
 
 	public CNF toCNF(Formula cnf, VariableMap mapping) {
@@ -275,14 +310,4 @@ public class CSVReader extends Evaluator {
 		}
 	}
 
-	private LiteralList parseConfiguration(String configuration) {
-		final String[] literalStrings = configuration.split(",");
-		final int[] literals = new int[literalStrings.length];
-		for (int i = 0; i < literalStrings.length; i++) {
-			literals[i] = Integer.parseInt(literalStrings[i]);
-		}
-		final LiteralList solution = new LiteralList(literals, Order.INDEX, false);
-		return solution;
-	}
-
 }
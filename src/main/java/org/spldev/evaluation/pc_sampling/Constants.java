@@ -37,6 +37,7 @@ public class Constants {
 	public final static String convertedPCFileName = "pclist";
 	public final static String convertedPCFMFileName = "pclist_fm";
 	public final static String groupedPCFileName = "grouped_";
+	public final static String groupedPCsFileName = "grouped";
 
 	public final static String pcFileExtension = "s";
 
@@ -24,9 +24,12 @@ package org.spldev.evaluation.pc_sampling;
 
 import java.nio.file.*;
 import java.util.*;
+import java.util.stream.*;
 
 import org.spldev.clauses.*;
 import org.spldev.evaluation.*;
+import org.spldev.evaluation.pc_sampling.io.*;
+import org.spldev.evaluation.properties.*;
 import org.spldev.evaluation.util.*;
 import org.spldev.formula.io.dimacs.*;
 import org.spldev.formula.structure.*;
@@ -40,6 +43,9 @@ import org.spldev.util.logging.*;
 
 public class PCConverter extends Evaluator {
 
+	protected static final Property<Boolean> stageCacheProperty = new Property<>("stage_cache",
+		Property.BooleanConverter, true);
+
 	protected CSVWriter conversionWriter;
 
 	@Override
@@ -51,7 +57,7 @@ public class PCConverter extends Evaluator {
 	protected void addCSVWriters() {
 		super.addCSVWriters();
 		conversionWriter = addCSVWriter("conversion.csv",
-			Arrays.asList("ID", "Mode", "Iteration", "Time", "Size", "Error", "Clauses", "Literals"));
+			Arrays.asList("ID", "Mode", "Iteration", "Time", "Size", "Error", "Clauses", "Literals", "Distinct", "Cache"));
 	}
 
 	@Override
@@ -78,10 +84,28 @@ public class PCConverter extends Evaluator {
 //				CNFSlicer slicer = new CNFSlicer(null);
 
 				try {
-					if (cnf != null) {
-						evalConvert(Constants.convertedPCFMFileName, cnf, systemName);
+					final Path extractionPath = Constants.expressionsOutput.resolve(systemName);
+					final List<String> fileNames = cnf != null
+						? Arrays.asList(Constants.convertedPCFMFileName, Constants.convertedPCFileName)
+						: Arrays.asList(Constants.convertedPCFileName);
+					final StageCache stageCache = new StageCache(extractionPath, "convert") //
+						.addStage(extractionPath, "extract") //
+						.addCNF(cnf);
+					if (stageCacheProperty.getValue() && stageCache.isHit(getOutputs(extractionPath, fileNames))) {
+						for (final String fileName : fileNames) {
+							writeCacheHit(fileName);
+						}
+					} else {
+						stageCache.invalidate();
+						boolean converted = true;
+						for (final String fileName : fileNames) {
+							converted &= evalConvert(fileName,
+								Constants.convertedPCFMFileName.equals(fileName) ? cnf : null, systemName) != null;
+						}
+						if (converted) {
+							stageCache.store();
+						}
 					}
-					evalConvert(Constants.convertedPCFileName, null, systemName);
 				} catch (final Exception e) {
 					Logger.logError(e);
 				}
@@ -94,6 +118,42 @@ public class PCConverter extends Evaluator {
 		}
 	}
 
+	private Path[] getOutputs(Path extractionPath, List<String> fileNames) {
+		final List<Path> outputs = new ArrayList<>();
+		for (final String fileName : fileNames) {
+			outputs.add(extractionPath.resolve(fileName + "." + new SerializableObjectFormat<>().getFileExtension()));
+			outputs.add(extractionPath.resolve(fileName + "." + PCListFile.EXTENSION));
+		}
+		return outputs.toArray(new Path[0]);
+	}
+
+	private void writeCacheHit(String fileName) {
+		conversionWriter.createNewLine();
+		conversionWriter.addValue(config.systemIDs.get(systemIndex));
+		conversionWriter.addValue(fileName);
+		conversionWriter.addValue(0);
+		conversionWriter.addValue(-1);
+		conversionWriter.addValue(-1);
+		conversionWriter.addValue(false);
+		conversionWriter.addValue(-1);
+		conversionWriter.addValue(-1);
+		conversionWriter.addValue(-1);
+		conversionWriter.addValue("hit");
+		conversionWriter.flush();
+		Logger.logInfo("convert -> cache hit");
+	}
+
+	/**
+	 * @return the number of distinct DNFs of all PCs and their negations,
+	 *         regardless of the order of clauses and literals
+	 */
+	private static long countDistinct(PresenceConditionList pcList) {
+		return pcList.parallelStream() //
+			.flatMap(pc -> Stream.of(pc.getDnf(), pc.getNegatedDnf())) //
+			.map(dnf -> new CanonicalClauseList(dnf.getClauses())) //
+			.distinct().count();
+	}
+
 	private PresenceConditionList evalConvert(String fileName, CNF cnf, String systemName) throws Exception {
 		PresenceConditionList pcList = null;
 		final Converter pcProcessor = new Converter();
@@ -134,13 +194,17 @@ public class PCConverter extends Evaluator {
 					conversionWriter.addValue(false);
 					conversionWriter.addValue(countClauses);
 					conversionWriter.addValue(countLiterals);
+					conversionWriter.addValue(countDistinct(pcList));
 				} else {
 					conversionWriter.addValue(0);
 					conversionWriter.addValue(true);
 					conversionWriter.addValue(0);
 					conversionWriter.addValue(0);
+					conversionWriter.addValue(0);
 				}
 
+				conversionWriter.addValue(stageCacheProperty.getValue() ? "miss" : "off");
+
 				Logger.logInfo("convert -> " + Double.toString((timeNeeded / 1_000_000) / 1_000.0));
 			} catch (final Exception e) {
 				conversionWriter.removeLastLine();
@@ -155,6 +219,8 @@ public class PCConverter extends Evaluator {
 			final Path pcListFile = Constants.expressionsOutput.resolve(config.systemNames.get(systemIndex))
 				.resolve(fileName + "." + format.getFileExtension());
 			FileHandler.save(pcList, pcListFile, format);
+			ArtifactCache.invalidate(pcListFile);
+			PCListFile.write(pcListFile.resolveSibling(fileName + "." + PCListFile.EXTENSION), pcList);
 		}
 		return pcList;
 	}
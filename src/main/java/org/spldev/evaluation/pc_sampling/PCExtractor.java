@@ -22,16 +22,35 @@
  */
 package org.spldev.evaluation.pc_sampling;
 
+import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
 
 import org.spldev.evaluation.*;
+import org.spldev.evaluation.pc_sampling.io.*;
+import org.spldev.evaluation.properties.*;
 import org.spldev.pc_extraction.extraction.cpp.*;
 import org.spldev.util.io.csv.*;
 import org.spldev.util.logging.*;
 
 public class PCExtractor extends Evaluator {
 
+	protected static final Property<Boolean> stageCacheProperty = new Property<>("stage_cache",
+		Property.BooleanConverter, true);
+	protected static final Property<Boolean> incrementalProperty = new Property<>("incremental_extraction",
+		Property.BooleanConverter, false);
+	protected static final Property<Integer> threadsProperty = new Property<>("extraction_threads",
+		Property.IntegerConverter, 1);
+	protected static final Property<Integer> systemsProperty = new Property<>("extraction_systems",
+		Property.IntegerConverter, 1);
+
+	/**
+	 * Number of partitions per thread, to balance files of different size.
+	 */
+	private static final int PARTITIONS_PER_THREAD = 4;
+
 	protected CSVWriter extractionWriter;
 
 	@Override
@@ -43,7 +62,7 @@ public class PCExtractor extends Evaluator {
 	protected void addCSVWriters() {
 		super.addCSVWriters();
 		extractionWriter = addCSVWriter("extraction.csv",
-			Arrays.asList("ID", "Mode", "Iteration", "Time", "Size", "Error"));
+			Arrays.asList("ID", "Mode", "Iteration", "Time", "Size", "Error", "Cache", "Files", "Reused"));
 	}
 
 	@Override
@@ -53,17 +72,54 @@ public class PCExtractor extends Evaluator {
 			Logger.logInfo("Start");
 			tabFormatter.incTabLevel();
 
-			final int systemIndexEnd = config.systemNames.size();
-			for (systemIndex = 0; systemIndex < systemIndexEnd; systemIndex++) {
-				logSystem();
-				tabFormatter.incTabLevel();
-				// Extract PCs
-				try {
-					evalExtract();
-				} catch (final Exception e) {
-					Logger.logError(e);
+			final int threads = threadsProperty.getValue() > 0 ? threadsProperty.getValue()
+				: Runtime.getRuntime().availableProcessors();
+			final ExecutorService filePool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+			final ExecutorService systemPool = systemsProperty.getValue() > 1
+				? Executors.newFixedThreadPool(systemsProperty.getValue())
+				: null;
+			try {
+				final int systemIndexEnd = config.systemNames.size();
+				if (systemPool == null) {
+					for (systemIndex = 0; systemIndex < systemIndexEnd; systemIndex++) {
+						logSystem();
+						tabFormatter.incTabLevel();
+						// Extract PCs
+						try {
+							writeRows(evalExtract(systemIndex, filePool, threads));
+						} catch (final Exception e) {
+							Logger.logError(e);
+						}
+						tabFormatter.decTabLevel();
+					}
+				} else {
+					final List<Future<List<Object[]>>> results = new ArrayList<>(systemIndexEnd);
+					for (int i = 0; i < systemIndexEnd; i++) {
+						final int index = i;
+						results.add(systemPool.submit(() -> {
+							Logger.logInfo("System " + (index + 1) + ": " + config.systemNames.get(index));
+							return evalExtract(index, filePool, threads);
+						}));
+					}
+					// Write the rows in the order of the systems
+					for (final Future<List<Object[]>> result : results) {
+						try {
+							writeRows(result.get());
+						} catch (final ExecutionException e) {
+							Logger.logError(e.getCause());
+						} catch (final InterruptedException e) {
+							Logger.logError(e);
+							break;
+						}
+					}
+				}
+			} finally {
+				if (filePool != null) {
+					filePool.shutdownNow();
+				}
+				if (systemPool != null) {
+					systemPool.shutdownNow();
 				}
-				tabFormatter.decTabLevel();
 			}
 			tabFormatter.setTabLevel(0);
 			Logger.logInfo("Finished");
@@ -72,32 +128,332 @@ public class PCExtractor extends Evaluator {
 		}
 	}
 
-	private void evalExtract() {
-		final CPPExtractor extractor = new CPPExtractor();
+	private void writeRows(List<Object[]> rows) {
+		for (final Object[] row : rows) {
+			extractionWriter.createNewLine();
+			for (final Object value : row) {
+				extractionWriter.addValue(value);
+			}
+		}
+		extractionWriter.flush();
+	}
+
+	/**
+	 * Extracts the PCs of a system.
+	 *
+	 * @param filePool the pool for extracting partitions of the source files in
+	 *                 parallel, or {@code null}, to extract the whole system at
+	 *                 once
+	 * @return the rows for extraction.csv
+	 */
+	private List<Object[]> evalExtract(int systemIndex, ExecutorService filePool, int threads)
+		throws IOException, InterruptedException {
 		final String systemName = config.systemNames.get(systemIndex);
+		final Object systemID = config.systemIDs.get(systemIndex);
 		final Path extractionPath = Constants.expressionsOutput.resolve(systemName);
 		final Path systemPath = Constants.systems.resolve(systemName);
+		final List<Object[]> rows = new ArrayList<>();
+
+		final StageCache stageCache = new StageCache(extractionPath, "extract") //
+			.addTree(systemPath, Constants.fileFilter);
+		if (stageCacheProperty.getValue() && stageCache.isHit(extractionPath)) {
+			rows.add(new Object[] { systemID, "extract", 0, -1, 0, false, "hit", -1, -1 });
+			Logger.logInfo("extract -> cache hit");
+			return rows;
+		}
+		stageCache.invalidate();
+
+		final Extraction extraction = new Extraction(systemPath, extractionPath, filePool, threads);
+		final boolean extracted;
+		if (incrementalProperty.getValue()) {
+			final ExtractionManifest manifest = ExtractionManifest.read(extractionPath);
+			if (manifest.isEmpty()) {
+				extracted = evalFullExtract(extraction, systemID, rows);
+				if (extracted) {
+					writeManifest(systemPath, extractionPath);
+				}
+			} else {
+				extracted = evalIncrementalExtract(extraction, systemID, manifest, rows);
+			}
+		} else {
+			extracted = evalFullExtract(extraction, systemID, rows);
+		}
+		if (extracted) {
+			stageCache.store();
+		}
+		return rows;
+	}
+
+	private boolean evalFullExtract(Extraction extraction, Object systemID, List<Object[]> rows)
+		throws InterruptedException {
+		boolean extracted = false;
 		for (int i = 0; i < config.systemIterations.getValue(); i++) {
-			extractionWriter.createNewLine();
 			try {
-				extractionWriter.addValue(config.systemIDs.get(systemIndex));
-				extractionWriter.addValue("extract");
-				extractionWriter.addValue(i);
-
+				extracted = false;
 				final long localTime = System.nanoTime();
-				final boolean extracted = extractor.extract(systemPath, extractionPath);
+				extracted = extraction.extractAll();
 				final long timeNeeded = System.nanoTime() - localTime;
 
-				extractionWriter.addValue(timeNeeded);
-				extractionWriter.addValue(0);
-				extractionWriter.addValue(!extracted);
+				rows.add(new Object[] { systemID, "extract", i, timeNeeded, 0, !extracted,
+					stageCacheProperty.getValue() ? "miss" : "off", -1, 0 });
 
 				Logger.logInfo("extract -> " + Double.toString((timeNeeded / 1_000_000) / 1_000.0));
+			} catch (final InterruptedException e) {
+				throw e;
 			} catch (final Exception e) {
-				extractionWriter.removeLastLine();
-				e.printStackTrace();
+				Logger.logError(e);
+			}
+		}
+		return extracted;
+	}
+
+	/**
+	 * Re-extracts only the source files that were added or changed since the
+	 * last extraction and removes the outputs of deleted files.
+	 */
+	private boolean evalIncrementalExtract(Extraction extraction, Object systemID, ExtractionManifest manifest,
+		List<Object[]> rows) throws IOException, InterruptedException {
+		final Path systemPath = extraction.systemPath;
+		final Path extractionPath = extraction.extractionPath;
+
+		final long localTime = System.nanoTime();
+		final List<Path> sources = listSources(systemPath);
+		final ExtractionManifest newManifest = new ExtractionManifest();
+		final List<Path> changed = new ArrayList<>();
+		final Set<String> changedPaths = new HashSet<>();
+		for (final Path source : sources) {
+			final Path file = systemPath.resolve(source);
+			final long size = Files.size(file);
+			final long lastModified = Files.getLastModifiedTime(file).toMillis();
+			final ExtractionManifest.Entry entry = manifest.get(source.toString());
+			if ((entry != null) && (entry.getSize() == size) && (entry.getLastModified() == lastModified)) {
+				newManifest.put(entry);
+			} else {
+				final String hash = ExtractionManifest.hash(file);
+				if ((entry != null) && entry.getHash().equals(hash)) {
+					newManifest.put(
+						new ExtractionManifest.Entry(source.toString(), size, lastModified, hash, entry.getOutputs()));
+				} else {
+					newManifest.put(new ExtractionManifest.Entry(source.toString(), size, lastModified, hash,
+						Collections.emptyList()));
+					changed.add(source);
+					changedPaths.add(source.toString());
+				}
+			}
+		}
+
+		// Remove the outputs of deleted and changed files
+		for (final ExtractionManifest.Entry entry : manifest.getEntries()) {
+			if ((newManifest.get(entry.getPath()) == null) || changedPaths.contains(entry.getPath())) {
+				for (final String output : entry.getOutputs()) {
+					Files.deleteIfExists(extractionPath.resolve(output));
+				}
+			}
+		}
+
+		boolean extracted = true;
+		if (!changed.isEmpty()) {
+			final Map<Path, List<Path>> outputs = extraction.extractFiles(changed);
+			if (outputs != null) {
+				for (final Path source : changed) {
+					final ExtractionManifest.Entry entry = newManifest.get(source.toString());
+					newManifest.put(new ExtractionManifest.Entry(entry.getPath(), entry.getSize(),
+						entry.getLastModified(), entry.getHash(),
+						outputs.get(source).stream().map(Path::toString).collect(Collectors.toList())));
+				}
+				newManifest.write(extractionPath);
+			} else {
+				// The outputs cannot be assigned to single files, so extract everything
+				Logger.logInfo("extract -> incremental extraction not possible, extracting all files");
+				extracted = extraction.extractor.extract(systemPath, extractionPath);
+				if (extracted) {
+					writeManifest(systemPath, extractionPath);
+				}
+			}
+		} else {
+			newManifest.write(extractionPath);
+		}
+		final long timeNeeded = System.nanoTime() - localTime;
+
+		rows.add(new Object[] { systemID, "extract_incremental", 0, timeNeeded, 0, !extracted,
+			stageCacheProperty.getValue() ? "miss" : "off", sources.size(), sources.size() - changed.size() });
+
+		Logger.logInfo("extract -> " + Double.toString((timeNeeded / 1_000_000) / 1_000.0) + " ("
+			+ (sources.size() - changed.size()) + "/" + sources.size() + " files reused)");
+		return extracted;
+	}
+
+	/**
+	 * Runs the extractor for one system, either on the whole system at once or on
+	 * partitions of its source files in parallel.
+	 */
+	private class Extraction {
+
+		private final CPPExtractor extractor = new CPPExtractor();
+		private final Path systemPath;
+		private final Path extractionPath;
+		private final ExecutorService filePool;
+		private final int threads;
+
+		private Extraction(Path systemPath, Path extractionPath, ExecutorService filePool, int threads) {
+			this.systemPath = systemPath;
+			this.extractionPath = extractionPath;
+			this.filePool = filePool;
+			this.threads = threads;
+		}
+
+		private boolean extractAll() throws IOException, InterruptedException {
+			if (filePool != null) {
+				if (extractFiles(listSources(systemPath)) != null) {
+					return true;
+				}
+				Logger.logInfo("extract -> parallel extraction not possible, extracting all files at once");
+			}
+			return extractor.extract(systemPath, extractionPath);
+		}
+
+		/**
+		 * Extracts the given source files in separate directories and moves the
+		 * outputs into the extraction directory. With a file pool, the files are
+		 * split into contiguous partitions that are extracted in parallel. The
+		 * outputs are moved in the order of the partitions after all partitions
+		 * are done.
+		 *
+		 * @return the outputs of each source file (relative to the extraction
+		 *         directory), or {@code null}, if the extraction failed or created
+		 *         outputs that cannot be assigned to a single source file
+		 */
+		private Map<Path, List<Path>> extractFiles(List<Path> sources) throws IOException, InterruptedException {
+			if (sources.isEmpty()) {
+				return new HashMap<>();
+			}
+			Files.createDirectories(config.tempPath);
+			final int partitionCount = filePool != null
+				? Math.min(sources.size(), threads * PARTITIONS_PER_THREAD)
+				: 1;
+			final int partitionSize = (sources.size() + partitionCount - 1) / partitionCount;
+			final List<Path> stagingPaths = new ArrayList<>();
+			try {
+				final List<Callable<Map<Path, List<Path>>>> tasks = new ArrayList<>();
+				for (int start = 0; start < sources.size(); start += partitionSize) {
+					final List<Path> partition = sources.subList(start,
+						Math.min(start + partitionSize, sources.size()));
+					final Path stagingPath = Files.createTempDirectory(config.tempPath, "extract_");
+					stagingPaths.add(stagingPath);
+					tasks.add(() -> extractPartition(partition, stagingPath));
+				}
+				final List<Map<Path, List<Path>>> results = new ArrayList<>(tasks.size());
+				if (filePool != null) {
+					for (final Future<Map<Path, List<Path>>> future : filePool.invokeAll(tasks)) {
+						try {
+							results.add(future.get());
+						} catch (final ExecutionException e) {
+							Logger.logError(e.getCause());
+							return null;
+						}
+					}
+				} else {
+					for (final Callable<Map<Path, List<Path>>> task : tasks) {
+						try {
+							results.add(task.call());
+						} catch (final IOException e) {
+							throw e;
+						} catch (final Exception e) {
+							Logger.logError(e);
+							return null;
+						}
+					}
+				}
+				if (results.contains(null)) {
+					return null;
+				}
+
+				final Map<Path, List<Path>> attribution = new HashMap<>();
+				for (int i = 0; i < results.size(); i++) {
+					final Path stagingExtractionPath = stagingPaths.get(i).resolve("extraction");
+					for (final Map.Entry<Path, List<Path>> entry : results.get(i).entrySet()) {
+						for (final Path output : entry.getValue()) {
+							final Path target = extractionPath.resolve(output.toString());
+							Files.createDirectories(target.getParent());
+							Files.move(stagingExtractionPath.resolve(output.toString()), target,
+								StandardCopyOption.REPLACE_EXISTING);
+						}
+						attribution.put(entry.getKey(), entry.getValue());
+					}
+				}
+				return attribution;
 			} finally {
-				extractionWriter.flush();
+				for (final Path stagingPath : stagingPaths) {
+					deleteDirectory(stagingPath);
+				}
+			}
+		}
+
+		private Map<Path, List<Path>> extractPartition(List<Path> sources, Path stagingPath) throws IOException {
+			final Path stagingSystemPath = stagingPath.resolve("system");
+			final Path stagingExtractionPath = stagingPath.resolve("extraction");
+			for (final Path source : sources) {
+				final Path target = stagingSystemPath.resolve(source.toString());
+				Files.createDirectories(target.getParent());
+				Files.copy(systemPath.resolve(source), target, StandardCopyOption.COPY_ATTRIBUTES);
+			}
+			// Each partition uses its own extractor, as extractors are not shared between threads
+			if (!new CPPExtractor().extract(stagingSystemPath, stagingExtractionPath)) {
+				return null;
+			}
+			final List<Path> unattributed = new ArrayList<>();
+			final Map<Path, List<Path>> attribution = ExtractionManifest.attribute(sources,
+				listFiles(stagingExtractionPath), unattributed);
+			return unattributed.isEmpty() ? attribution : null;
+		}
+	}
+
+	/**
+	 * Creates the manifest after a full extraction.
+	 */
+	private void writeManifest(Path systemPath, Path extractionPath) throws IOException {
+		final List<Path> sources = listSources(systemPath);
+		final Map<Path, List<Path>> attribution = ExtractionManifest.attribute(sources, listFiles(extractionPath),
+			new ArrayList<>());
+		final ExtractionManifest manifest = new ExtractionManifest();
+		for (final Path source : sources) {
+			final Path file = systemPath.resolve(source);
+			manifest.put(new ExtractionManifest.Entry(source.toString(), Files.size(file),
+				Files.getLastModifiedTime(file).toMillis(), ExtractionManifest.hash(file),
+				attribution.get(source).stream().map(Path::toString).collect(Collectors.toList())));
+		}
+		manifest.write(extractionPath);
+	}
+
+	/**
+	 * @return the relative paths of all source files of the given system
+	 */
+	private static List<Path> listSources(Path systemPath) throws IOException {
+		try (Stream<Path> files = Files.walk(systemPath)) {
+			return files.filter(Constants.fileFilter).map(systemPath::relativize).sorted()
+				.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * @return the relative paths of all files in the given directory
+	 */
+	private static List<Path> listFiles(Path directory) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return Collections.emptyList();
+		}
+		try (Stream<Path> files = Files.walk(directory)) {
+			return files.filter(Files::isRegularFile).map(directory::relativize).sorted()
+				.collect(Collectors.toList());
+		}
+	}
+
+	private static void deleteDirectory(Path directory) throws IOException {
+		if (Files.exists(directory)) {
+			try (Stream<Path> files = Files.walk(directory)) {
+				for (final Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+					Files.deleteIfExists(file);
+				}
 			}
 		}
 	}
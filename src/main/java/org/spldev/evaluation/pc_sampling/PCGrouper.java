@@ -28,20 +28,28 @@ import java.util.*;
 
 import org.spldev.clauses.*;
 import org.spldev.evaluation.*;
+import org.spldev.evaluation.pc_sampling.io.*;
+import org.spldev.evaluation.properties.*;
 import org.spldev.evaluation.util.*;
 import org.spldev.formula.io.dimacs.*;
 import org.spldev.formula.structure.*;
 import org.spldev.pc_extraction.convert.*;
 import org.spldev.pc_extraction.convert.Grouper.*;
 import org.spldev.util.data.*;
-import org.spldev.util.io.*;
-import org.spldev.util.io.binary.*;
 import org.spldev.util.io.csv.*;
 import org.spldev.util.io.format.*;
 import org.spldev.util.logging.*;
 
 public class PCGrouper extends Evaluator {
 
+	protected static final Property<Boolean> stageCacheProperty = new Property<>("stage_cache",
+		Property.BooleanConverter, true);
+
+	private static final List<Grouping> fmGroupings = Arrays.asList(Grouping.FM_ONLY, Grouping.PC_ALL_FM,
+		Grouping.PC_ALL_FM_FM, Grouping.PC_FOLDER_FM, Grouping.PC_FILE_FM, Grouping.PC_VARS_FM);
+	private static final List<Grouping> pcGroupings = Arrays.asList(Grouping.PC_ALL, Grouping.PC_FOLDER,
+		Grouping.PC_FILE, Grouping.PC_VARS);
+
 	protected CSVWriter groupingWriter;
 
 	@Override
@@ -53,7 +61,7 @@ public class PCGrouper extends Evaluator {
 	protected void addCSVWriters() {
 		super.addCSVWriters();
 		groupingWriter = addCSVWriter("grouping.csv",
-			Arrays.asList("ID", "Mode", "Iteration", "Time", "Size", "Error"));
+			Arrays.asList("ID", "Mode", "Iteration", "Time", "Size", "Error", "Cache"));
 	}
 
 	@Override
@@ -68,6 +76,8 @@ public class PCGrouper extends Evaluator {
 				logSystem();
 				tabFormatter.incTabLevel();
 				final String systemName = config.systemNames.get(systemIndex);
+				// Artifacts of the previous system are not needed anymore
+				ArtifactCache.clear();
 
 				final ModelReader<Formula> fmReader = new ModelReader<>();
 				fmReader.setPathToFiles(config.modelPath);
@@ -79,18 +89,41 @@ public class PCGrouper extends Evaluator {
 				final CNF cnf = fm.get();
 
 				try {
+					final List<Grouping> groupings = new ArrayList<>();
 					if (cnf != null) {
-						evalGroup(Grouping.FM_ONLY, cnf, systemName);
-						evalGroup(Grouping.PC_ALL_FM, cnf, systemName);
-						evalGroup(Grouping.PC_ALL_FM_FM, cnf, systemName);
-						evalGroup(Grouping.PC_FOLDER_FM, cnf, systemName);
-						evalGroup(Grouping.PC_FILE_FM, cnf, systemName);
-						evalGroup(Grouping.PC_VARS_FM, cnf, systemName);
+						groupings.addAll(fmGroupings);
+					}
+					groupings.addAll(pcGroupings);
+
+					final Path extractionPath = Constants.expressionsOutput.resolve(systemName);
+					final StageCache stageCache = new StageCache(extractionPath, "group") //
+						.addStage(extractionPath, "convert") //
+						.addString(groupings.toString());
+					final Path expFile = extractionPath
+						.resolve(Constants.groupedPCsFileName + "." + ExpressionsFile.EXTENSION);
+					if (stageCacheProperty.getValue() && stageCache.isHit(expFile)) {
+						for (final Grouping groupingValue : groupings) {
+							writeCacheHit(groupingValue);
+						}
+					} else {
+						stageCache.invalidate();
+						// Groupings that fail must not be read from a previous run
+						Files.deleteIfExists(expFile);
+						ArtifactCache.invalidate(expFile);
+						// All groupings share the conditions they have in common
+						final ExpressionsFile.Builder builder = new ExpressionsFile.Builder();
+						boolean grouped = true;
+						for (final Grouping groupingValue : groupings) {
+							grouped &= evalGroup(groupingValue, fmGroupings.contains(groupingValue) ? cnf : null,
+								systemName, builder);
+						}
+						if (!builder.isEmpty()) {
+							builder.write(expFile);
+						}
+						if (grouped) {
+							stageCache.store();
+						}
 					}
-					evalGroup(Grouping.PC_ALL, null, systemName);
-					evalGroup(Grouping.PC_FOLDER, null, systemName);
-					evalGroup(Grouping.PC_FILE, null, systemName);
-					evalGroup(Grouping.PC_VARS, null, systemName);
 				} catch (final Exception e) {
 					Logger.logError(e);
 				}
@@ -103,7 +136,21 @@ public class PCGrouper extends Evaluator {
 		}
 	}
 
-	private Expressions evalGroup(Grouping groupingValue, CNF cnf, String systemName) throws Exception {
+	private void writeCacheHit(Grouping groupingValue) {
+		groupingWriter.createNewLine();
+		groupingWriter.addValue(config.systemIDs.get(systemIndex));
+		groupingWriter.addValue(groupingValue);
+		groupingWriter.addValue(0);
+		groupingWriter.addValue(-1);
+		groupingWriter.addValue(-1);
+		groupingWriter.addValue(false);
+		groupingWriter.addValue("hit");
+		groupingWriter.flush();
+		Logger.logInfo(groupingValue + " -> cache hit");
+	}
+
+	private boolean evalGroup(Grouping groupingValue, CNF cnf, String systemName, ExpressionsFile.Builder builder)
+		throws Exception {
 		Expressions expressions = null;
 		final PresenceConditionList pcList = TWiseEvaluator
 			.readPCList(cnf == null ? Constants.convertedPCFileName : Constants.convertedPCFMFileName, systemName);
@@ -133,6 +180,8 @@ public class PCGrouper extends Evaluator {
 					groupingWriter.addValue(true);
 				}
 
+				groupingWriter.addValue(stageCacheProperty.getValue() ? "miss" : "off");
+
 				Logger.logInfo(groupingValue + " -> " + Double.toString((timeNeeded / 1_000_000) / 1_000.0));
 			} catch (final FileNotFoundException e) {
 				groupingWriter.removeLastLine();
@@ -145,15 +194,13 @@ public class PCGrouper extends Evaluator {
 		}
 
 		if (expressions != null) {
-			final SerializableObjectFormat<Expressions> format = new SerializableObjectFormat<>();
-			final Path expFile = Constants.expressionsOutput.resolve(config.systemNames.get(systemIndex))
-				.resolve(Constants.groupedPCFileName + groupingValue + "." + format.getFileExtension());
-			FileHandler.save(expressions, expFile, format);
+			builder.addGrouping(groupingValue.toString(), expressions.getExpressions());
 			Logger.logInfo(Constants.groupedPCFileName + groupingValue + " OK");
+			return true;
 		} else {
 			Logger.logInfo(Constants.groupedPCFileName + groupingValue + " FAIL");
+			return false;
 		}
-		return expressions;
 	}
 
 }
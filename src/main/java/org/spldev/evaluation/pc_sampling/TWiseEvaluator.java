@@ -25,6 +25,7 @@ package org.spldev.evaluation.pc_sampling;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.*;
 
 import org.spldev.analysis.sat4j.solver.*;
@@ -34,6 +35,9 @@ import org.spldev.analysis.sat4j.twise.TWiseStatisticGenerator.*;
 import org.spldev.clauses.*;
 import org.spldev.clauses.LiteralList.*;
 import org.spldev.evaluation.*;
+import org.spldev.evaluation.pc_sampling.coverage.*;
+import org.spldev.evaluation.pc_sampling.io.*;
+import org.spldev.evaluation.pc_sampling.process.*;
 import org.spldev.evaluation.pc_sampling.properties.*;
 import org.spldev.evaluation.properties.*;
 import org.spldev.formula.io.dimacs.*;
@@ -48,16 +52,32 @@ public class TWiseEvaluator extends Evaluator {
 
 	protected static final ListProperty<String> coverageT = new ListProperty<>("t", Property.StringConverter);
 	protected static final GroupingProperty coverageGrouping = new GroupingProperty("grouping");
+	protected static final Property<Boolean> bitSetCoverage = new Property<>("bitset_coverage",
+		Property.BooleanConverter, true);
+	protected static final Property<Integer> coverageThreads = new Property<>("coverage_threads",
+		Property.IntegerConverter, 0);
+	protected static final ListProperty<String> growthCheckpoints = new ListProperty<>("growth_checkpoints",
+		Property.StringConverter);
+	private static final List<String> DEFAULT_GROWTH_CHECKPOINTS = Arrays.asList("5", "10", "25", "50", "75", "100");
+	// Percentages of the sample size, 0 for after every configuration
+	private static final int ALL_CHECKPOINTS = 0;
 
-	protected CSVWriter evaluationWriter;
+	protected CSVWriter evaluationWriter, growthWriter, metricsWriter;
+
+	private List<Integer> growthPercentages;
+
+	private final StageMetrics metrics = new StageMetrics();
 
 	private CNF modelCNF;
 	private TWiseStatisticGenerator tWiseStatisticGenerator;
 
 	private List<int[]> sampleArguments;
+	// sample index and prefix size for each entry of sampleArguments
+	private List<int[]> samplePrefixes;
 	private List<ValidityStatistic> sampleValidityStatistics;
 	private List<CoverageStatistic> coverageStatistics;
 	private String coverageCriterion;
+	private ForkJoinPool coveragePool;
 
 	@Override
 	public String getName() {
@@ -69,6 +89,35 @@ public class TWiseEvaluator extends Evaluator {
 		super.addCSVWriters();
 		evaluationWriter = addCSVWriter("evaluation.csv", Arrays.asList("ModelID", "AlgorithmID", "SystemIteration",
 			"AlgorithmIteration", "SamplePercentage", "Criterion", "Value"));
+		growthWriter = addCSVWriter("coverage_growth.csv", Arrays.asList("ModelID", "AlgorithmID",
+			"SystemIteration", "AlgorithmIteration", "Criterion", "SampleSize", "Value"));
+		metricsWriter = addCSVWriter("metrics.csv", StageMetrics.CSV_HEADER);
+		growthPercentages = parseGrowthCheckpoints();
+	}
+
+	private static List<Integer> parseGrowthCheckpoints() {
+		final List<String> checkpoints = growthCheckpoints.getValue().isEmpty() ? DEFAULT_GROWTH_CHECKPOINTS
+			: growthCheckpoints.getValue();
+		final List<Integer> percentages = new ArrayList<>(checkpoints.size());
+		for (final String checkpoint : checkpoints) {
+			final String value = checkpoint.trim();
+			if ("all".equals(value)) {
+				percentages.add(ALL_CHECKPOINTS);
+			} else {
+				int percentage;
+				try {
+					percentage = Integer.parseInt(value);
+				} catch (final NumberFormatException e) {
+					percentage = -1;
+				}
+				if ((percentage < 1) || (percentage > 100)) {
+					throw new IllegalArgumentException("Invalid value \"" + checkpoint + "\" of growth_checkpoints, "
+						+ "expected a percentage between 1 and 100 or \"all\"");
+				}
+				percentages.add(percentage);
+			}
+		}
+		return percentages;
 	}
 
 	protected final HashMap<String, PresenceConditionManager> expressionMap = new HashMap<>();
@@ -91,7 +140,18 @@ public class TWiseEvaluator extends Evaluator {
 			Collections.sort(dirList, (p1, p2) -> p1.getFileName().toString().compareTo(p2.getFileName().toString()));
 
 			tabFormatter.incTabLevel();
-			dirList.forEach(this::readSamples);
+			final int threads = coverageThreads.getValue();
+			coveragePool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+			try {
+				for (final Path sampleDir : dirList) {
+					readSamples(sampleDir);
+					writeMetrics();
+					// Artifacts of a system are not needed for the next one
+					ArtifactCache.clear();
+				}
+			} finally {
+				coveragePool.shutdownNow();
+			}
 			tabFormatter.setTabLevel(0);
 			Logger.logInfo("Finished");
 		} else {
@@ -113,31 +173,36 @@ public class TWiseEvaluator extends Evaluator {
 
 		final DIMACSFormat format = new DIMACSFormat();
 		final Path modelFile = sampleDir.resolve("model." + format.getFileExtension());
-		final Result<CNF> parseResult = FileHandler.load(modelFile, format).map(Clauses::convertToCNF);
-//		if (parseResult.isEmpty()) {
-//			Logger.logProblems(parseResult.getProblems());
-//			return;
-//		}
+		final TWiseConfigurationUtil util;
+		final StageMetrics.Timer modelTimer = metrics.start(systemIndex, "prepare_model");
+		try {
+			final Result<CNF> parseResult = FileHandler.load(modelFile, format).map(Clauses::convertToCNF);
+//			if (parseResult.isEmpty()) {
+//				Logger.logProblems(parseResult.getProblems());
+//				return;
+//			}
 
-		modelCNF = parseResult.get();
+			modelCNF = parseResult.get();
 
-		final TWiseConfigurationUtil util;
-		if (!modelCNF.getClauses().isEmpty()) {
-			util = new TWiseConfigurationUtil(modelCNF, new Sat4JSolver(modelCNF));
-		} else {
-			util = new TWiseConfigurationUtil(modelCNF, null);
-		}
+			if (!modelCNF.getClauses().isEmpty()) {
+				util = new TWiseConfigurationUtil(modelCNF, new Sat4JSolver(modelCNF));
+			} else {
+				util = new TWiseConfigurationUtil(modelCNF, null);
+			}
 
-		util.computeRandomSample(1000);
-		if (!modelCNF.getClauses().isEmpty()) {
-			util.computeMIG(false, false);
+			util.computeRandomSample(1000);
+			if (!modelCNF.getClauses().isEmpty()) {
+				util.computeMIG(false, false);
+			}
+		} finally {
+			modelTimer.stop();
 		}
 		tWiseStatisticGenerator = new TWiseStatisticGenerator(util);
 
 		List<Path> sampleFileList;
 		try (Stream<Path> fileStream = Files.list(sampleDir)) {
 			sampleFileList = fileStream.filter(Files::isReadable).filter(Files::isRegularFile)
-				.filter(file -> file.getFileName().toString().endsWith(".sample")).collect(Collectors.toList());
+				.filter(SampleFile::isSampleFile).collect(Collectors.toList());
 		} catch (final IOException e) {
 			Logger.logError(e);
 			tabFormatter.decTabLevel();
@@ -150,15 +215,17 @@ public class TWiseEvaluator extends Evaluator {
 		Logger.logInfo("Reading Samples...");
 		tabFormatter.incTabLevel();
 		final List<List<? extends LiteralList>> samples = new ArrayList<>(sampleFileList.size());
+		final List<int[]> fileArguments = new ArrayList<>(sampleFileList.size());
 		sampleArguments = new ArrayList<>(sampleFileList.size());
+		samplePrefixes = new ArrayList<>(sampleFileList.size());
 		for (final Path sampleFile : sampleFileList) {
 
 			final List<LiteralList> sample;
 			int[] argumentValues;
+			final StageMetrics.Timer timer = metrics.start(systemIndex, "read_sample");
 			try {
-				final String fileName = sampleFile.getFileName().toString();
-				final String[] arguments = fileName.substring(0, fileName.length() - ".sample".length()).split("_");
-				sample = Files.lines(sampleFile).map(this::parseConfiguration).collect(Collectors.toList());
+				final String[] arguments = SampleFile.getRunName(sampleFile).split("_");
+				sample = SampleFile.readConfigurations(sampleFile, modelCNF.getVariableMap().size());
 
 				argumentValues = new int[4];
 				argumentValues[0] = Integer.parseInt(arguments[1]);
@@ -169,11 +236,16 @@ public class TWiseEvaluator extends Evaluator {
 			} catch (final Exception e) {
 				Logger.logError(e);
 				continue;
+			} finally {
+				timer.stop();
 			}
-			// if Random
+			final int sampleIndex = samples.size();
+			samples.add(sample);
+			fileArguments.add(argumentValues);
+			// if Random, evaluate prefixes of the sample
 			if (argumentValues[1] == 8) {
 				for (int p = 5; p <= 100; p += 5) {
-					samples.add(sample.subList(0, (sample.size() * p) / 100));
+					samplePrefixes.add(new int[] { sampleIndex, (sample.size() * p) / 100 });
 					final int[] argumentValues2 = new int[4];
 					argumentValues2[0] = argumentValues[0];
 					argumentValues2[1] = argumentValues[1];
@@ -182,7 +254,7 @@ public class TWiseEvaluator extends Evaluator {
 					sampleArguments.add(argumentValues2);
 				}
 			} else {
-				samples.add(sample);
+				samplePrefixes.add(new int[] { sampleIndex, sample.size() });
 				sampleArguments.add(argumentValues);
 			}
 		}
@@ -190,12 +262,26 @@ public class TWiseEvaluator extends Evaluator {
 		tabFormatter.decTabLevel();
 		Logger.logInfo("Testing Validity...");
 		tabFormatter.incTabLevel();
-		sampleValidityStatistics = tWiseStatisticGenerator.getValidity(samples);
+		final StageMetrics.Timer validityTimer = metrics.start(systemIndex, "validity");
+		try {
+			sampleValidityStatistics = getPrefixValidity(tWiseStatisticGenerator.getValidity(samples));
+		} finally {
+			validityTimer.stop();
+		}
 		for (int i = 0; i < sampleArguments.size(); i++) {
 			final int i2 = i;
 			writeCSV(evaluationWriter, writer -> writeValidity(writer, i2));
 		}
 
+		final BitSetCoverageGenerator bitSetCoverageGenerator = new BitSetCoverageGenerator(util, coveragePool);
+		final List<SampleMatrix> sampleMatrices;
+		final StageMetrics.Timer matricesTimer = metrics.start(systemIndex, "coverage_matrices");
+		try {
+			sampleMatrices = bitSetCoverage.getValue() ? bitSetCoverageGenerator.createMatrices(samples) : null;
+		} finally {
+			matricesTimer.stop();
+		}
+
 		final int tSize = coverageT.getValue().size();
 		final int gSize = coverageGrouping.getValue().size();
 		int gIndex = 0;
@@ -203,14 +289,44 @@ public class TWiseEvaluator extends Evaluator {
 			gIndex++;
 			final List<List<PresenceCondition>> nodes = readExpressions(groupingValue, util)
 				.getGroupedPresenceConditions();
+			final CoverageGrouping preparedGrouping;
+			final StageMetrics.Timer groupingTimer = metrics.start(systemIndex, "coverage_grouping");
+			try {
+				preparedGrouping = sampleMatrices != null ? bitSetCoverageGenerator.prepare(sampleMatrices, nodes)
+					: null;
+			} finally {
+				groupingTimer.stop();
+			}
 			int tIndex = 0;
 			for (final String tValue : coverageT.getValue()) {
 				tIndex++;
 				logCoverage(tSize, gSize, tIndex, gIndex);
 
 				coverageCriterion = groupingValue + "_t" + tValue;
-				coverageStatistics = tWiseStatisticGenerator.getCoverage(samples, nodes, Integer.parseInt(tValue),
-					ConfigurationScore.NONE, true);
+				final StageMetrics.Timer coverageTimer = metrics.start(systemIndex, "coverage");
+				try {
+					if (preparedGrouping != null) {
+						// One pass yields the coverage of every prefix of every sample
+						final List<CoverageCurve> curves = bitSetCoverageGenerator.getCoverageCurves(preparedGrouping,
+							Integer.parseInt(tValue), true);
+						coverageStatistics = new ArrayList<>(samplePrefixes.size());
+						for (final int[] prefix : samplePrefixes) {
+							coverageStatistics.add(curves.get(prefix[0]).getStatistic(prefix[1]));
+						}
+						for (int i = 0; i < curves.size(); i++) {
+							writeGrowthCurve(fileArguments.get(i), curves.get(i));
+						}
+					} else {
+						final List<List<? extends LiteralList>> prefixSamples = new ArrayList<>(samplePrefixes.size());
+						for (final int[] prefix : samplePrefixes) {
+							prefixSamples.add(samples.get(prefix[0]).subList(0, prefix[1]));
+						}
+						coverageStatistics = tWiseStatisticGenerator.getCoverage(prefixSamples, nodes,
+							Integer.parseInt(tValue), ConfigurationScore.NONE, true);
+					}
+				} finally {
+					coverageTimer.stop();
+				}
 				for (int i = 0; i < sampleArguments.size(); i++) {
 					final int i2 = i;
 					writeCSV(evaluationWriter, writer -> writeCoverage(writer, i2));
@@ -221,38 +337,112 @@ public class TWiseEvaluator extends Evaluator {
 		tabFormatter.decTabLevel();
 	}
 
+	/**
+	 * Writes the latency percentiles of all stages measured since the last call.
+	 */
+	private void writeMetrics() {
+		for (final List<Object> row : metrics.drain()) {
+			writeCSV(metricsWriter, writer -> row.forEach(writer::addValue));
+		}
+	}
+
 	private PresenceConditionManager readExpressions(String group, TWiseConfigurationUtil util) {
 		try {
 			return new PresenceConditionManager(util,
-				readExpressions(group, config.systemNames.get(systemIndex)).getExpressions());
+				readExpressions(group, config.systemNames.get(systemIndex)));
 		} catch (final Exception e) {
 			Logger.logError(e);
 			return null;
 		}
 	}
 
+	/**
+	 * Reads the serialized PC list, which is required for grouping. The list is
+	 * shared via the {@link ArtifactCache} and must not be modified.
+	 */
 	public static PresenceConditionList readPCList(String name, String systemName) throws Exception {
 		final SerializableObjectFormat<PresenceConditionList> format = new SerializableObjectFormat<>();
 		final Path pcListFile = Constants.expressionsOutput.resolve(systemName)
 			.resolve(name + "." + format.getFileExtension());
-		return FileHandler.load(pcListFile, format).orElseThrow();
+		return ArtifactCache.get(pcListFile, file -> FileHandler.load(file, format).orElseThrow());
+	}
+
+	/**
+	 * Reads the binary PC list. If only the serialized PC list exists, it is
+	 * converted once.
+	 */
+	public static PCListFile readPCListFile(String name, String systemName) throws Exception {
+		final Path pcListFile = Constants.expressionsOutput.resolve(systemName)
+			.resolve(name + "." + PCListFile.EXTENSION);
+		if (!Files.exists(pcListFile)) {
+			PCListFile.write(pcListFile, readPCList(name, systemName));
+		}
+		return ArtifactCache.get(pcListFile, PCListFile::read);
 	}
 
-	public static Expressions readExpressions(String group, String systemName) throws Exception {
+	/**
+	 * Reads the grouped expressions of one grouping from the binary file of all
+	 * groupings or, if the grouping is not contained, from the serialized
+	 * expressions of earlier versions. The conditions are shared and must not be
+	 * modified.
+	 */
+	public static List<List<ClauseList>> readExpressions(String group, String systemName) throws Exception {
+		final Path systemDir = Constants.expressionsOutput.resolve(systemName);
+		final Path expFile = systemDir.resolve(Constants.groupedPCsFileName + "." + ExpressionsFile.EXTENSION);
+		if (Files.exists(expFile)) {
+			// Serialized files of older runs do not belong to the current grouping
+			final List<List<ClauseList>> expressions = ArtifactCache.get(expFile, ExpressionsFile::read)
+				.getExpressions(group);
+			if (expressions == null) {
+				throw new IOException("Grouping " + group + " failed for " + systemName);
+			}
+			return expressions;
+		}
 		final SerializableObjectFormat<Expressions> format = new SerializableObjectFormat<>();
-		final Path expFile = Constants.expressionsOutput.resolve(systemName)
+		final Path serializedFile = systemDir
 			.resolve(Constants.groupedPCFileName + group + "." + format.getFileExtension());
-		return FileHandler.load(expFile, format).orElseThrow();
+		return ArtifactCache.get(serializedFile, file -> FileHandler.load(file, format).orElseThrow())
+			.getExpressions();
 	}
 
-	private LiteralList parseConfiguration(String configuration) {
-		final String[] literalStrings = configuration.split(",");
-		final int[] literals = new int[literalStrings.length];
-		for (int i = 0; i < literalStrings.length; i++) {
-			literals[i] = Integer.parseInt(literalStrings[i]);
+	private List<ValidityStatistic> getPrefixValidity(List<ValidityStatistic> validityStatistics) {
+		final List<ValidityStatistic> prefixValidityStatistics = new ArrayList<>(samplePrefixes.size());
+		for (final int[] prefix : samplePrefixes) {
+			final boolean[] configValidities = validityStatistics.get(prefix[0]).getConfigValidities();
+			final ValidityStatistic prefixValidityStatistic = new ValidityStatistic(prefix[1]);
+			for (int i = 0; i < prefix[1]; i++) {
+				prefixValidityStatistic.setConfigValidity(i, configValidities[i]);
+			}
+			prefixValidityStatistics.add(prefixValidityStatistic);
+		}
+		return prefixValidityStatistics;
+	}
+
+	private void writeGrowthCurve(int[] argumentValues, CoverageCurve curve) {
+		final int size = curve.getConfigurationCount();
+		final SortedSet<Integer> prefixSizes = new TreeSet<>();
+		if (size > 0) {
+			for (final int percentage : growthPercentages) {
+				if (percentage == ALL_CHECKPOINTS) {
+					for (int i = 1; i <= size; i++) {
+						prefixSizes.add(i);
+					}
+				} else {
+					prefixSizes.add(Math.max(1, (size * percentage) / 100));
+				}
+			}
+		}
+		for (final int prefixSize : prefixSizes) {
+			writeCSV(growthWriter, writer -> {
+				writer.addValue(systemIndex);
+				writer.addValue(argumentValues[1]);
+				writer.addValue(argumentValues[0]);
+				writer.addValue(argumentValues[2]);
+				writer.addValue(coverageCriterion);
+				writer.addValue(prefixSize);
+				writer.addValue(curve.getStatistic(prefixSize).getCoverage());
+			});
 		}
-		final LiteralList solution = new LiteralList(literals, Order.INDEX, false);
-		return solution;
 	}
 
 	private void writeValidity(CSVWriter csvWriter, int i) {
@@ -25,14 +25,16 @@ package org.spldev.evaluation.pc_sampling;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.*;
 
-import org.spldev.analysis.sat4j.*;
 import org.spldev.clauses.*;
-import org.spldev.clauses.LiteralList.*;
 import org.spldev.clauses.io.*;
 import org.spldev.clauses.solutions.*;
 import org.spldev.evaluation.pc_sampling.algorithms.*;
+import org.spldev.evaluation.pc_sampling.counting.*;
+import org.spldev.evaluation.pc_sampling.io.*;
+import org.spldev.evaluation.pc_sampling.process.*;
 import org.spldev.evaluation.pc_sampling.properties.*;
 import org.spldev.evaluation.process.*;
 import org.spldev.evaluation.properties.*;
@@ -44,7 +46,6 @@ import org.spldev.util.data.Result;
 import org.spldev.util.io.*;
 import org.spldev.util.io.csv.*;
 import org.spldev.util.io.format.*;
-import org.spldev.util.job.*;
 import org.spldev.util.logging.*;
 
 public class TWiseSampler extends AlgorithmEvaluator<SolutionList, Algorithm<SolutionList>> {
@@ -55,14 +56,30 @@ public class TWiseSampler extends AlgorithmEvaluator<SolutionList, Algorithm<Sol
 	protected static final GroupingProperty grouping = new GroupingProperty();
 	protected static final Property<Integer> randomIterationsProperty = new Property<>("random_iterations",
 		Property.IntegerConverter);
-
-	public static int YASA_MIN_SIZE;
-	public static int YASA_MAX_SIZE;
-	public static long YASA_MIN_TIME;
-	public static long YASA_MAX_TIME;
+	protected static final Property<Boolean> inProcessProperty = new Property<>("in_process",
+		Property.BooleanConverter, false);
+	protected static final Property<Boolean> textSamplesProperty = new Property<>("text_samples",
+		Property.BooleanConverter, false);
+	protected static final Property<Integer> countTimeoutProperty = new Property<>("count_timeout",
+		Property.IntegerConverter, 60000);
+	protected static final Property<Integer> countThreadsProperty = new Property<>("count_threads",
+		Property.IntegerConverter, 1);
 
 	protected Path samplesDir, curSampleDir;
 
+	private ModelCounter modelCounter;
+	private final Deque<PendingModel> pendingModels = new ArrayDeque<>();
+
+	private static class PendingModel {
+		private final Object[] values;
+		private final CompletableFuture<ModelCount> count;
+
+		private PendingModel(Object[] values, CompletableFuture<ModelCount> count) {
+			this.values = values;
+			this.count = count;
+		}
+	}
+
 	@Override
 	public String getName() {
 		return "eval-twise-sampler";
@@ -71,20 +88,24 @@ public class TWiseSampler extends AlgorithmEvaluator<SolutionList, Algorithm<Sol
 	@Override
 	protected void addCSVWriters() {
 		super.addCSVWriters();
+		if (isWorker()) {
+			return;
+		}
 		extendCSVWriter(getModelCSVWriter(), Arrays.asList("Configurations", "FMFeatures", "FMConstraints", "FMPCs",
-			"FMPCFeatures", "PCFeatures", "PCConstraints", "PCs"));
-		extendCSVWriter(getDataCSVWriter(), Arrays.asList("Size"));
+			"FMPCFeatures", "PCFeatures", "PCConstraints", "PCs", "ConfigurationsLower", "ConfigurationsUpper",
+			"ConfigurationsExact"));
+		extendCSVWriter(getDataCSVWriter(), Arrays.asList("Size", "AlgorithmTime", "StartupTime"));
 	}
 
 	@Override
-	protected List<Algorithm<SolutionList>> prepareAlgorithms() {
+	protected List<Algorithm<SolutionList>> prepareAlgorithms(Path tempDir) {
 		final ArrayList<Algorithm<SolutionList>> algorithms = new ArrayList<>();
 
 		for (final String algorithmName : algorithmsProperty.getValue()) {
 			for (final String tValueString : tProperty.getValue()) {
 				final int tValue = Integer.parseInt(tValueString);
-				final Path sampleFile = config.tempPath.resolve("sample.csv");
-				final Path modelFile = config.tempPath.resolve("model.dimacs");
+				final Path sampleFile = tempDir.resolve("sample.csv");
+				final Path modelFile = tempDir.resolve("model.dimacs");
 				switch (algorithmName) {
 				case "DUMMY": {
 					algorithms.add(new Dummy());
@@ -151,7 +172,7 @@ public class TWiseSampler extends AlgorithmEvaluator<SolutionList, Algorithm<Sol
 				}
 				case "YA": {
 					for (final String groupingValue : grouping.getValue()) {
-						final Path expressionFile = config.tempPath
+						final Path expressionFile = tempDir
 							.resolve("expressions_" + groupingValue + ".expression");
 						for (final String mValue : mProperty.getValue()) {
 							final YASA yasa = new YASA(sampleFile, modelFile);
@@ -183,7 +204,7 @@ public class TWiseSampler extends AlgorithmEvaluator<SolutionList, Algorithm<Sol
 
 		final CNF modelCNF = fm.orElse(() -> {
 			try {
-				return TWiseEvaluator.readPCList(Constants.convertedPCFileName, systemName).getFormula();
+				return TWiseEvaluator.readPCListFile(Constants.convertedPCFileName, systemName).getFormula();
 			} catch (final Exception e) {
 				Logger.logError(e);
 				return null;
@@ -200,15 +221,18 @@ public class TWiseSampler extends AlgorithmEvaluator<SolutionList, Algorithm<Sol
 	}
 
 	@Override
-	protected CNF adaptModel() throws IOException {
-		final CNF randomCNF = modelCNF.randomize(new Random(config.randomSeed.getValue() + systemIteration));
+	protected CNF adaptModel(IterationJob<SolutionList, Algorithm<SolutionList>> job) throws IOException {
+		final Random random = new Random(config.randomSeed.getValue() + job.getSystemIteration());
+		final VariablePermutation permutation = VariablePermutation.random(modelCNF.getVariableMap().size(), random);
+		final CNF randomCNF = permutation.apply(modelCNF, random);
+		job.setPermutation(permutation);
 		final DIMACSFormatCNF format = new DIMACSFormatCNF();
-		final Path fileName = config.tempPath.resolve("model" + "." + format.getFileExtension());
+		final Path fileName = job.getTempDir().resolve("model" + "." + format.getFileExtension());
 		FileHandler.save(randomCNF, fileName, format);
 
 		for (final String groupingValue : grouping.getValue()) {
 			try {
-				saveExpressions(modelCNF, randomCNF, groupingValue);
+				saveExpressions(job, groupingValue);
 			} catch (final Exception e) {
 				Logger.logError(e);
 			}
@@ -225,77 +249,180 @@ public class TWiseSampler extends AlgorithmEvaluator<SolutionList, Algorithm<Sol
 //		saveExpressions(modelCNF2, randomCNF2, GroupingProperty.PC_FILE);
 //		saveExpressions(modelCNF2, randomCNF2, GroupingProperty.PC_VARS);
 
-		YASA_MIN_SIZE = Integer.MAX_VALUE;
-		YASA_MAX_SIZE = -1;
-		YASA_MIN_TIME = Long.MAX_VALUE;
-		YASA_MAX_TIME = -1;
-
 		return randomCNF;
 	}
 
-	private void saveExpressions(final CNF cnf, final CNF randomCNF, String group) throws IOException {
-		final Expressions readExpressions = readExpressions(config.systemNames.get(systemIndex), group);
+	private void saveExpressions(IterationJob<SolutionList, Algorithm<SolutionList>> job, String group)
+		throws IOException {
+		final List<List<ClauseList>> readExpressions = readExpressions(config.systemNames.get(systemIndex), group);
 		if (readExpressions != null) {
-			final List<List<ClauseList>> expressionGroups = adaptConditions(cnf, randomCNF,
-				readExpressions.getExpressions());
-			randomizeConditions(expressionGroups, new Random(config.randomSeed.getValue() + systemIteration));
+			final List<List<ClauseList>> expressionGroups = adaptConditions(job.getPermutation(), readExpressions);
+			randomizeConditions(expressionGroups,
+				new Random(config.randomSeed.getValue() + job.getSystemIteration()));
 
+			if (inProcessProperty.getValue()) {
+				job.setExpressions(group, expressionGroups);
+				return;
+			}
 			final ExpressionGroupFormat format = new ExpressionGroupFormat();
-			final Path fileName = config.tempPath.resolve("expressions_" + group + "." + format.getFileExtension());
-			FileHandler.save(expressionGroups, fileName, format);
+			final Path fileName = job.getTempDir().resolve("expressions_" + group + "." + format.getFileExtension());
+			final StageMetrics.Timer timer = getMetrics().start(config.systemIDs.get(job.getSystemIndex()),
+				"write_expressions");
+			try {
+				FileHandler.save(expressionGroups, fileName, format);
+			} finally {
+				timer.stop();
+			}
 		}
 	}
 
 	@Override
-	protected void adaptAlgorithm(Algorithm<SolutionList> algorithm) throws Exception {
+	protected void adaptAlgorithm(IterationJob<SolutionList, Algorithm<SolutionList>> job,
+		AlgorithmRun<SolutionList> run) throws Exception {
+		final Algorithm<SolutionList> algorithm = run.getAlgorithm();
+		final RunStatistics statistics = job.getStatistics();
+		if (algorithm instanceof AFIDESampling) {
+			((AFIDESampling) algorithm).setModel(job.getRandomizedModel());
+		}
+		if (algorithm instanceof YASA) {
+			final YASA yasa = (YASA) algorithm;
+			yasa.setExpressions(job.getExpressions(yasa.getGroupingValue()));
+		}
 		if (algorithm instanceof FIDERandom) {
-			((FIDERandom) algorithm).setSeed(config.randomSeed.getValue() + algorithmIteration);
+			final FIDERandom fideRandom = (FIDERandom) algorithm;
+			fideRandom.setSeed(config.randomSeed.getValue() + run.getAlgorithmIteration());
+			if (fideRandom.getLimit() == 0) {
+				fideRandom.setLimit(statistics.getMaxSize());
+			}
 		} else if (algorithm instanceof PLEDGE_MIN) {
-			((PLEDGE_MIN) algorithm).setTimeout(YASA_MIN_TIME);
+			((PLEDGE_MIN) algorithm).setTimeout(statistics.getMinTime());
+			((PLEDGE_MIN) algorithm).setNumberOfConfigurations(statistics.getMaxSize());
 		} else if (algorithm instanceof PLEDGE_MAX) {
-			((PLEDGE_MAX) algorithm).setTimeout(YASA_MAX_TIME);
+			((PLEDGE_MAX) algorithm).setTimeout(statistics.getMaxTime());
+			((PLEDGE_MAX) algorithm).setNumberOfConfigurations(statistics.getMaxSize());
 		}
 	}
 
 	@Override
-	protected void writeModel(CSVWriter modelCSVWriter) {
-		modelCSVWriter.addValue(config.systemIDs.get(systemIndex));
-		modelCSVWriter.addValue(config.systemNames.get(systemIndex));
+	protected InProcessAlgorithm<SolutionList> getInProcessAlgorithm(Algorithm<SolutionList> algorithm) {
+		if (inProcessProperty.getValue() && (algorithm instanceof AFIDESampling)) {
+			return (AFIDESampling) algorithm;
+		}
+		return null;
+	}
+
+	/**
+	 * YASA runs first, because FIDE-Random and PLEDGE derive their budgets from its
+	 * results.
+	 */
+	@Override
+	protected int getPhase(Algorithm<SolutionList> algorithm) {
+		if (algorithm instanceof YASA) {
+			return 0;
+		} else if ((algorithm instanceof FIDERandom) || (algorithm instanceof PLEDGE)) {
+			return 2;
+		} else {
+			return 1;
+		}
+	}
+
+	@Override
+	protected boolean usesWorkerPool(Algorithm<SolutionList> algorithm) {
+		return (algorithm instanceof ASPLCATSampling) || (algorithm instanceof AFIDESampling)
+			|| (algorithm instanceof AFIDESampling_Org) || (algorithm instanceof PLEDGE);
+	}
+
+	@Override
+	public void evaluate() {
+		if (inProcessProperty.getValue() && (parallelismProperty.getValue() > 1)) {
+			// In-process runs share the heap of this JVM and cannot be killed on timeout
+			Logger.logError("in_process=true requires parallelism=1");
+			return;
+		}
+		try (ModelCounter counter = new ModelCounter(Constants.output.resolve("model_counts.csv"),
+			countTimeoutProperty.getValue(), countThreadsProperty.getValue(), config.randomSeed.getValue())) {
+			modelCounter = counter;
+			super.evaluate();
+			writePendingModels(true);
+		} finally {
+			modelCounter = null;
+		}
+	}
+
+	/**
+	 * Counts the configurations of the model in the background, so that the
+	 * sampling of the system does not wait for it. The row is written as soon as
+	 * the count and all counts of previous systems are available.
+	 */
+	@Override
+	protected void writeModelCSV() {
+		final Object[] values = new Object[10];
+		values[0] = config.systemIDs.get(systemIndex);
+		values[1] = config.systemNames.get(systemIndex);
 
 		final String systemName = config.systemNames.get(systemIndex);
+		CompletableFuture<ModelCount> count = null;
 		try {
-			final PresenceConditionList pcfmList = TWiseEvaluator.readPCList(Constants.convertedPCFMFileName,
-				systemName);
+			final PCListFile pcfmList = TWiseEvaluator.readPCListFile(Constants.convertedPCFMFileName, systemName);
 			final CNF formula = pcfmList.getFormula();
-			final CountSolutionsAnalysis countAnalysis = new CountSolutionsAnalysis();
-			countAnalysis.setTimeout(0);
-			modelCSVWriter.addValue(Executor.run(countAnalysis::execute, formula).get());
-			modelCSVWriter.addValue(formula.getVariableMap().size());
-			modelCSVWriter.addValue(formula.getClauses().size());
-			modelCSVWriter.addValue(pcfmList.size());
-			modelCSVWriter.addValue(pcfmList.getPCNames().size());
+			count = modelCounter.count(formula);
+			values[3] = formula.getVariableMap().size();
+			values[4] = formula.getClauses().size();
+			values[5] = pcfmList.size();
+			values[6] = pcfmList.getPCNameCount();
 		} catch (final Exception e) {
-			modelCSVWriter.addValue(0);
-			modelCSVWriter.addValue(-1);
-			modelCSVWriter.addValue(-1);
-			modelCSVWriter.addValue(-1);
-			modelCSVWriter.addValue(-1);
+			Arrays.fill(values, 3, 7, -1);
 		}
 
 		try {
-			final PresenceConditionList pcList = TWiseEvaluator.readPCList(Constants.convertedPCFileName, systemName);
+			final PCListFile pcList = TWiseEvaluator.readPCListFile(Constants.convertedPCFileName, systemName);
 			final CNF formula = pcList.getFormula();
-			modelCSVWriter.addValue(formula.getVariableMap().size());
-			modelCSVWriter.addValue(formula.getClauses().size());
-			modelCSVWriter.addValue(pcList.size());
+			values[7] = formula.getVariableMap().size();
+			values[8] = formula.getClauses().size();
+			values[9] = pcList.size();
 		} catch (final Exception e) {
-			modelCSVWriter.addValue(-1);
-			modelCSVWriter.addValue(-1);
-			modelCSVWriter.addValue(-1);
+			Arrays.fill(values, 7, 10, -1);
 		}
+
+		pendingModels.add(new PendingModel(values, count));
+		writePendingModels(false);
 	}
 
-	public Expressions readExpressions(String name, String grouping) {
+	private void writePendingModels(boolean wait) {
+		while (!pendingModels.isEmpty()) {
+			final PendingModel pendingModel = pendingModels.peek();
+			if (!wait && (pendingModel.count != null) && !pendingModel.count.isDone()) {
+				break;
+			}
+			pendingModels.poll();
+			ModelCount count = null;
+			if (pendingModel.count != null) {
+				try {
+					count = pendingModel.count.get();
+				} catch (final ExecutionException e) {
+					Logger.logError(e.getCause());
+				} catch (final InterruptedException e) {
+					Logger.logError(e);
+				}
+			}
+			final ModelCount modelCount = count;
+			writeCSV(getModelCSVWriter(), writer -> writeModel(writer, pendingModel.values, modelCount));
+		}
+	}
+
+	private void writeModel(CSVWriter modelCSVWriter, Object[] values, ModelCount count) {
+		modelCSVWriter.addValue(values[0]);
+		modelCSVWriter.addValue(values[1]);
+		modelCSVWriter.addValue(count != null ? count.getEstimate() : -1);
+		for (int i = 3; i < values.length; i++) {
+			modelCSVWriter.addValue(values[i]);
+		}
+		modelCSVWriter.addValue(count != null ? count.getLowerBound() : -1);
+		modelCSVWriter.addValue(count != null ? count.getUpperBound() : -1);
+		modelCSVWriter.addValue(count != null ? count.isExact() : false);
+	}
+
+	public List<List<ClauseList>> readExpressions(String name, String grouping) {
 		try {
 			return TWiseEvaluator.readExpressions(grouping, name);
 		} catch (final Exception e) {
@@ -305,36 +432,57 @@ public class TWiseSampler extends AlgorithmEvaluator<SolutionList, Algorithm<Sol
 	}
 
 	@Override
-	protected void writeData(CSVWriter dataCSVWriter) {
-		super.writeData(dataCSVWriter);
+	protected void processResult(IterationJob<SolutionList, Algorithm<SolutionList>> job,
+		AlgorithmRun<SolutionList> run) {
+		final org.spldev.evaluation.process.Result<SolutionList> result = run.getResult();
 		final SolutionList configurationList = result.getResult();
 		if (configurationList == null) {
-			dataCSVWriter.addValue(-1);
 			return;
 		}
-		dataCSVWriter.addValue(configurationList.getSolutions().size());
+		run.setResultSize(configurationList.getSolutions().size());
 
-		writeSamples(config.systemIDs.get(systemIndex) + "_" + systemIteration + "_" + algorithmIndex + "_"
-			+ algorithmIteration, configurationList.getSolutions());
+		writeSamples(job, run, configurationList.getSolutions());
 
-		if (Objects.equals("YASA", algorithmList.get(algorithmIndex).getName())) {
-			if (YASA_MAX_SIZE < configurationList.getSolutions().size()) {
-				YASA_MAX_SIZE = configurationList.getSolutions().size();
-			}
-			if (YASA_MIN_SIZE > configurationList.getSolutions().size()) {
-				YASA_MIN_SIZE = configurationList.getSolutions().size();
-			}
-			if (YASA_MAX_TIME < result.getTime()) {
-				YASA_MAX_TIME = result.getTime();
-			}
-			if (YASA_MIN_TIME > result.getTime()) {
-				YASA_MIN_TIME = result.getTime();
+		if (Objects.equals("YASA", run.getAlgorithm().getName())) {
+			try {
+				getStatisticsStore().update(config.systemIDs.get(run.getSystemIndex()), run,
+					configurationList.getSolutions().size(), result.getTime());
+			} catch (final IOException e) {
+				Logger.logError(e);
 			}
 		}
+		// The sample is written, only its size is needed for the data row
+		result.setResult(null);
 
 		Logger.logInfo("\t\tDone.");
 	}
 
+	@Override
+	protected void restoreResult(IterationJob<SolutionList, Algorithm<SolutionList>> job,
+		AlgorithmRun<SolutionList> run, RunJournal.Entry entry) {
+		if (Objects.equals("YASA", run.getAlgorithm().getName()) && (entry.getResultSize() >= 0)) {
+			job.getStatistics().update(run, entry.getResultSize(), entry.getTime());
+		}
+	}
+
+	@Override
+	protected void addData(List<Object> data, AlgorithmRun<SolutionList> run) {
+		super.addData(data, run);
+		data.add(run.getResultSize());
+		data.add(run.getAlgorithmTime());
+		data.add(run.getStartupTime());
+	}
+
+	@Override
+	protected Path getResultFile(AlgorithmRun<SolutionList> run) {
+		return curSampleDir.resolve(getSampleMethod(run) + "." + SampleFile.BINARY_EXTENSION);
+	}
+
+	private String getSampleMethod(AlgorithmRun<SolutionList> run) {
+		return config.systemIDs.get(run.getSystemIndex()) + "_" + run.getSystemIteration() + "_"
+			+ run.getAlgorithmIndex() + "_" + run.getAlgorithmIteration();
+	}
+
 	@Override
 	protected void setupDirectories() throws IOException {
 		super.setupDirectories();
@@ -343,16 +491,13 @@ public class TWiseSampler extends AlgorithmEvaluator<SolutionList, Algorithm<Sol
 		Files.createDirectories(samplesDir);
 	}
 
-	protected List<List<ClauseList>> adaptConditions(CNF cnf, CNF randomCNF, List<List<ClauseList>> groupedConditions) {
-		final ArrayList<List<ClauseList>> adaptedGroupedConditions = new ArrayList<>();
+	protected List<List<ClauseList>> adaptConditions(VariablePermutation permutation,
+		List<List<ClauseList>> groupedConditions) {
+		final ArrayList<List<ClauseList>> adaptedGroupedConditions = new ArrayList<>(groupedConditions.size());
 		for (final List<ClauseList> conditions : groupedConditions) {
-			final ArrayList<ClauseList> adaptedConditions = new ArrayList<>();
+			final ArrayList<ClauseList> adaptedConditions = new ArrayList<>(conditions.size());
 			for (final ClauseList condition : conditions) {
-				final ClauseList adaptedClauseList = new ClauseList();
-				for (final LiteralList clause : condition) {
-					adaptedClauseList.add(clause.adapt(cnf.getVariableMap(), randomCNF.getVariableMap()).get());
-				}
-				adaptedConditions.add(adaptedClauseList);
+				adaptedConditions.add(permutation.apply(condition));
 			}
 			adaptedGroupedConditions.add(adaptedConditions);
 		}
@@ -366,35 +511,31 @@ public class TWiseSampler extends AlgorithmEvaluator<SolutionList, Algorithm<Sol
 		Collections.shuffle(groupedConditions, random);
 	}
 
-	protected void writeSamples(final String sampleMethod, final List<LiteralList> configurationList) {
+	protected void writeSamples(IterationJob<SolutionList, Algorithm<SolutionList>> job,
+		AlgorithmRun<SolutionList> run, final List<LiteralList> configurationList) {
+		final int systemID = config.systemIDs.get(run.getSystemIndex());
+		final String sampleMethod = getSampleMethod(run);
+		final List<LiteralList> sample;
+		final StageMetrics.Timer revertTimer = getMetrics().start(systemID, "revert_sample");
 		try {
-			Files.write(curSampleDir.resolve(sampleMethod + ".sample"), //
-				configurationList.stream() //
-					.map(this::reorderSolution) //
-					.map(TWiseSampler::toString) //
-					.collect(Collectors.toList()));
+			sample = configurationList.stream() //
+				.map(job.getPermutation()::revert) //
+				.collect(Collectors.toList());
+		} finally {
+			revertTimer.stop();
+		}
+		final StageMetrics.Timer writeTimer = getMetrics().start(systemID, "write_samples");
+		try {
+			SampleFile.write(getResultFile(run), systemID, run.getSystemIteration(), run.getAlgorithmIndex(),
+				run.getAlgorithmIteration(), modelCNF.getVariableMap().size(), sample);
+			if (textSamplesProperty.getValue()) {
+				SampleFile.writeText(curSampleDir.resolve(sampleMethod + "." + SampleFile.TEXT_EXTENSION), sample);
+			}
 		} catch (final IOException e) {
 			Logger.logError(e);
+		} finally {
+			writeTimer.stop();
 		}
 	}
 
-	private LiteralList reorderSolution(LiteralList solution) {
-		final LiteralList adaptedSolution = solution
-			.adapt(randomizedModelCNF.getVariableMap(), modelCNF.getVariableMap()).get();
-		adaptedSolution.setOrder(Order.INDEX);
-		return adaptedSolution;
-	}
-
-	private static String toString(LiteralList literalSet) {
-		final StringBuilder sb = new StringBuilder();
-		for (final int literal : literalSet.getLiterals()) {
-			sb.append(literal);
-			sb.append(',');
-		}
-		if (sb.length() > 0) {
-			sb.deleteCharAt(sb.length() - 1);
-		}
-		return sb.toString();
-	}
-
 }
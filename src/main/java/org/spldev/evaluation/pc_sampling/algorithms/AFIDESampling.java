@@ -24,33 +24,52 @@ package org.spldev.evaluation.pc_sampling.algorithms;
 
 import java.io.*;
 import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
 
+import org.spldev.clauses.*;
+import org.spldev.clauses.LiteralList.*;
 import org.spldev.clauses.solutions.*;
 import org.spldev.clauses.solutions.io.*;
+import org.spldev.evaluation.pc_sampling.process.*;
+import org.spldev.evaluation.pc_sampling.process.FIDEToolBridge.*;
 import org.spldev.evaluation.process.*;
+import org.spldev.formula.structure.atomic.literal.*;
 import org.spldev.util.data.Result;
 import org.spldev.util.io.*;
 import org.spldev.util.logging.*;
 
-public abstract class AFIDESampling extends Algorithm<SolutionList> {
+public abstract class AFIDESampling extends Algorithm<SolutionList>
+	implements InProcessAlgorithm<SolutionList>, GCLoggingAlgorithm {
 
 	private final Path outputFile;
 	private final Path fmFile;
+	private Path gcLogFile;
 
 	protected Long seed;
 	protected int limit;
 
+	protected CNF model;
+
 	public AFIDESampling(Path outputFile, Path fmFile) {
 		this.outputFile = outputFile;
 		this.fmFile = fmFile;
 	}
 
+	@Override
+	public void setGCLogFile(Path gcLogFile) {
+		this.gcLogFile = gcLogFile;
+	}
+
 	@Override
 	protected void addCommandElements() {
 		addCommandElement("java");
 		addCommandElement("-da");
 		addCommandElement("-Xmx14g");
 		addCommandElement("-Xms2g");
+		if (gcLogFile != null) {
+			addCommandElement(ResourceMonitor.getGCLogOption(gcLogFile));
+		}
 		addCommandElement("-cp");
 		addCommandElement("resources/tools/FIDE/*");
 		addCommandElement("org.spldev.util.cli.CLI");
@@ -80,6 +99,41 @@ public abstract class AFIDESampling extends Algorithm<SolutionList> {
 		return parse.get();
 	}
 
+	@Override
+	public SolutionList execute() throws Exception {
+		if (model == null) {
+			throw new IllegalStateException("No model for in-process execution");
+		}
+		final VariableMap variables = model.getVariableMap();
+		final List<int[]> configurations = FIDEToolBridge.getDefault().sample(variables.getNames(),
+			toLiterals(model.getClauses()), createRequest());
+		return new SolutionList(variables, configurations.stream() //
+			.map(configuration -> new LiteralList(configuration, Order.INDEX)) //
+			.collect(Collectors.toList()));
+	}
+
+	/**
+	 * @return the parameters for an in-process execution, equivalent to the
+	 *         command line arguments of this algorithm.
+	 */
+	protected abstract SampleRequest createRequest();
+
+	protected static List<int[]> toLiterals(List<LiteralList> clauses) {
+		return clauses.stream().map(LiteralList::getLiterals).collect(Collectors.toList());
+	}
+
+	public CNF getModel() {
+		return model;
+	}
+
+	/**
+	 * Sets the model that is used for an in-process execution instead of the
+	 * model file.
+	 */
+	public void setModel(CNF model) {
+		this.model = model;
+	}
+
 	public Long getSeed() {
 		return seed;
 	}
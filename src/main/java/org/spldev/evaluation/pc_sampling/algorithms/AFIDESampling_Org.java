@@ -27,15 +27,17 @@ import java.nio.file.*;
 
 import org.spldev.clauses.solutions.*;
 import org.spldev.clauses.solutions.io.*;
+import org.spldev.evaluation.pc_sampling.process.*;
 import org.spldev.evaluation.process.*;
 import org.spldev.util.data.Result;
 import org.spldev.util.io.*;
 import org.spldev.util.logging.*;
 
-public abstract class AFIDESampling_Org extends Algorithm<SolutionList> {
+public abstract class AFIDESampling_Org extends Algorithm<SolutionList> implements GCLoggingAlgorithm {
 
 	private final Path outputFile;
 	private final Path fmFile;
+	private Path gcLogFile;
 
 	protected Long seed;
 	protected int limit;
@@ -45,12 +47,20 @@ public abstract class AFIDESampling_Org extends Algorithm<SolutionList> {
 		this.fmFile = fmFile;
 	}
 
+	@Override
+	public void setGCLogFile(Path gcLogFile) {
+		this.gcLogFile = gcLogFile;
+	}
+
 	@Override
 	protected void addCommandElements() {
 		addCommandElement("java");
 		addCommandElement("-da");
 		addCommandElement("-Xmx14g");
 		addCommandElement("-Xms2g");
+		if (gcLogFile != null) {
+			addCommandElement(ResourceMonitor.getGCLogOption(gcLogFile));
+		}
 		addCommandElement("-cp");
 		addCommandElement("resources/tools/FIDE_org/*");
 		addCommandElement("de.ovgu.featureide.fm.core.cli.FeatureIDECLI");
@@ -29,14 +29,16 @@ import java.util.*;
 import org.spldev.clauses.*;
 import org.spldev.clauses.LiteralList.*;
 import org.spldev.clauses.solutions.*;
+import org.spldev.evaluation.pc_sampling.process.*;
 import org.spldev.evaluation.process.*;
 import org.spldev.formula.structure.atomic.literal.*;
 import org.spldev.util.logging.*;
 
-public abstract class ASPLCATSampling extends Algorithm<org.spldev.clauses.solutions.SolutionList> {
+public abstract class ASPLCATSampling extends Algorithm<org.spldev.clauses.solutions.SolutionList> implements GCLoggingAlgorithm {
 
 	private final Path outputFile;
 	private final Path fmFile;
+	private Path gcLogFile;
 
 	protected final int t;
 
@@ -46,12 +48,20 @@ public abstract class ASPLCATSampling extends Algorithm<org.spldev.clauses.solut
 		this.t = t;
 	}
 
+	@Override
+	public void setGCLogFile(Path gcLogFile) {
+		this.gcLogFile = gcLogFile;
+	}
+
 	@Override
 	protected void addCommandElements() {
 		addCommandElement("java");
 		addCommandElement("-da");
 		addCommandElement("-Xmx14g");
 		addCommandElement("-Xms2g");
+		if (gcLogFile != null) {
+			addCommandElement(ResourceMonitor.getGCLogOption(gcLogFile));
+		}
 		addCommandElement("-cp");
 		addCommandElement("resources/tools/SPLCAT/*");
 		addCommandElement("no.sintef.ict.splcatool.SPLCATool");
@@ -24,7 +24,7 @@ package org.spldev.evaluation.pc_sampling.algorithms;
 
 import java.nio.file.*;
 
-import org.spldev.evaluation.pc_sampling.*;
+import org.spldev.evaluation.pc_sampling.process.FIDEToolBridge.*;
 
 public class FIDERandom extends AFIDESampling {
 
@@ -32,14 +32,6 @@ public class FIDERandom extends AFIDESampling {
 		super(outputFile, fmFile);
 	}
 
-	@Override
-	public void preProcess() throws Exception {
-		if (limit == 0) {
-			limit = TWiseSampler.YASA_MAX_SIZE;
-		}
-		super.preProcess();
-	}
-
 	@Override
 	protected void addCommandElements() {
 		super.addCommandElements();
@@ -53,6 +45,14 @@ public class FIDERandom extends AFIDESampling {
 		}
 	}
 
+	@Override
+	protected SampleRequest createRequest() {
+		final SampleRequest request = new SampleRequest("Random");
+		request.setLimit(limit);
+		request.setSeed(seed);
+		return request;
+	}
+
 	@Override
 	public String getName() {
 		return "FIDE-Random";
@@ -24,6 +24,8 @@ package org.spldev.evaluation.pc_sampling.algorithms;
 
 import java.nio.file.*;
 
+import org.spldev.evaluation.pc_sampling.process.FIDEToolBridge.*;
+
 public class IncLing extends AFIDESampling {
 
 	public IncLing(Path outputFile, Path fmFile) {
@@ -43,6 +45,14 @@ public class IncLing extends AFIDESampling {
 		}
 	}
 
+	@Override
+	protected SampleRequest createRequest() {
+		final SampleRequest request = new SampleRequest("Incling");
+		request.setT(2);
+		request.setSeed(seed);
+		return request;
+	}
+
 	@Override
 	public String getName() {
 		return "Incling";
@@ -30,15 +30,16 @@ import java.util.regex.*;
 import org.spldev.clauses.*;
 import org.spldev.clauses.LiteralList.*;
 import org.spldev.clauses.solutions.*;
-import org.spldev.evaluation.pc_sampling.*;
+import org.spldev.evaluation.pc_sampling.process.*;
 import org.spldev.evaluation.process.*;
 import org.spldev.formula.structure.atomic.literal.*;
 import org.spldev.util.logging.*;
 
-public abstract class PLEDGE extends Algorithm<org.spldev.clauses.solutions.SolutionList> {
+public abstract class PLEDGE extends Algorithm<org.spldev.clauses.solutions.SolutionList> implements GCLoggingAlgorithm {
 
 	private final Path outputFile;
 	private final Path fmFile;
+	private Path gcLogFile;
 
 	private long numberOfConfigurations = 10;
 	private long timeout = 1000;
@@ -65,9 +66,8 @@ public abstract class PLEDGE extends Algorithm<org.spldev.clauses.solutions.Solu
 	}
 
 	@Override
-	public void preProcess() throws Exception {
-		numberOfConfigurations = TWiseSampler.YASA_MAX_SIZE;
-		super.preProcess();
+	public void setGCLogFile(Path gcLogFile) {
+		this.gcLogFile = gcLogFile;
 	}
 
 	@Override
@@ -76,6 +76,9 @@ public abstract class PLEDGE extends Algorithm<org.spldev.clauses.solutions.Solu
 		addCommandElement("-da");
 		addCommandElement("-Xmx14g");
 		addCommandElement("-Xms2g");
+		if (gcLogFile != null) {
+			addCommandElement(ResourceMonitor.getGCLogOption(gcLogFile));
+		}
 		addCommandElement("-cp");
 		addCommandElement("tools/Pledge/*");
 		addCommandElement("pledge.Main");
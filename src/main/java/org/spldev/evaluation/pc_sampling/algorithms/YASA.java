@@ -23,10 +23,15 @@
 package org.spldev.evaluation.pc_sampling.algorithms;
 
 import java.nio.file.*;
+import java.util.*;
+
+import org.spldev.clauses.*;
+import org.spldev.evaluation.pc_sampling.process.FIDEToolBridge.*;
 
 public class YASA extends AFIDESampling {
 
 	private Path expressionFile;
+	private List<List<ClauseList>> expressions;
 	private String groupingValue;
 
 	private int t;
@@ -55,6 +60,26 @@ public class YASA extends AFIDESampling {
 		}
 	}
 
+	@Override
+	protected SampleRequest createRequest() {
+		final SampleRequest request = new SampleRequest("YASA");
+		request.setT(t);
+		request.setM(m);
+		request.setSeed(seed);
+		if (expressions != null) {
+			final List<List<List<int[]>>> expressionLiterals = new ArrayList<>(expressions.size());
+			for (final List<ClauseList> group : expressions) {
+				final List<List<int[]>> groupLiterals = new ArrayList<>(group.size());
+				for (final ClauseList expression : group) {
+					groupLiterals.add(toLiterals(expression));
+				}
+				expressionLiterals.add(groupLiterals);
+			}
+			request.setExpressions(expressionLiterals);
+		}
+		return request;
+	}
+
 	@Override
 	public String getName() {
 		return "YASA";
@@ -73,6 +98,18 @@ public class YASA extends AFIDESampling {
 		this.expressionFile = expressionFile;
 	}
 
+	public List<List<ClauseList>> getExpressions() {
+		return expressions;
+	}
+
+	/**
+	 * Sets the expressions that are used for an in-process execution instead of
+	 * the expression file.
+	 */
+	public void setExpressions(List<List<ClauseList>> expressions) {
+		this.expressions = expressions;
+	}
+
 	public String getGroupingValue() {
 		return groupingValue;
 	}
@@ -0,0 +1,212 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.counting;
+
+import java.math.*;
+import java.util.*;
+
+import org.sat4j.core.*;
+import org.sat4j.minisat.*;
+import org.sat4j.specs.*;
+import org.spldev.clauses.*;
+
+/**
+ * Estimates the number of configurations of a CNF by hashing with random XOR
+ * constraints. Each XOR contains every variable with probability 1/2, so each
+ * configuration survives m XORs with probability 2^-m.
+ * <br>
+ * If all {@link #TRIALS} trials with m XORs are satisfiable, the count is at
+ * least 2^(m-1) (otherwise the expected number of surviving configurations is
+ * below 1/2). If all trials are unsatisfiable, the count is at most 2^(m+1) (by
+ * Chebyshev's inequality for pairwise independent hashing). Both bounds hold
+ * with probability at least 1 - 2^-{@link #TRIALS} each.
+ */
+public class ApproximateModelCounter {
+
+	private static final int TRIALS = 7;
+
+	private final CNF cnf;
+	private final Random random;
+	private final long deadline;
+
+	private ISolver solver;
+	private final Map<Integer, Integer> satisfiableTrials = new HashMap<>();
+
+	/**
+	 * @param timeout the time budget in milliseconds
+	 */
+	public ApproximateModelCounter(CNF cnf, long seed, long timeout) {
+		this.cnf = cnf;
+		random = new Random(seed);
+		deadline = System.currentTimeMillis() + timeout;
+	}
+
+	/**
+	 * @return the estimate, or {@code null}, if not even the satisfiability of
+	 *         the CNF could be decided within the time budget
+	 */
+	public ModelCount count() {
+		final int variableCount = cnf.getVariableMap().size();
+		final BigInteger maxCount = BigInteger.ONE.shiftLeft(variableCount);
+		solver = SolverFactory.newDefault();
+		solver.newVar(variableCount);
+		try {
+			for (final LiteralList clause : cnf.getClauses()) {
+				solver.addClause(new VecInt(clause.getLiterals()));
+			}
+			if (!isSatisfiable(new VecInt())) {
+				return ModelCount.exact(BigInteger.ZERO);
+			}
+		} catch (final ContradictionException e) {
+			return ModelCount.exact(BigInteger.ZERO);
+		} catch (final TimeoutException e) {
+			return null;
+		}
+
+		// Largest XOR count for which all trials are satisfiable
+		int lower = 0;
+		// Smallest XOR count for which all trials are unsatisfiable
+		int upper = variableCount + 1;
+		try {
+			int low = 0;
+			int high = variableCount;
+			while (low < high) {
+				final int m = (low + high + 1) >>> 1;
+				if (countSatisfiableTrials(m) == TRIALS) {
+					low = m;
+				} else {
+					high = m - 1;
+				}
+			}
+			lower = low;
+			for (int m = lower + 1; m <= variableCount; m++) {
+				if (countSatisfiableTrials(m) == 0) {
+					upper = m;
+					break;
+				}
+			}
+		} catch (final TimeoutException e) {
+			// Use the bounds found so far
+			for (final Map.Entry<Integer, Integer> entry : satisfiableTrials.entrySet()) {
+				if (entry.getValue() == TRIALS) {
+					lower = Math.max(lower, entry.getKey());
+				} else if (entry.getValue() == 0) {
+					upper = Math.min(upper, entry.getKey());
+				}
+			}
+		} finally {
+			solver.reset();
+		}
+
+		final BigInteger lowerBound = BigInteger.ONE.shiftLeft(Math.max(lower - 1, 0));
+		final BigInteger upperBound = upper <= variableCount ? BigInteger.ONE.shiftLeft(upper + 1).min(maxCount)
+			: maxCount;
+		final int estimateExponent = upper <= variableCount ? (lower + upper) >>> 1 : lower;
+		final BigInteger estimate = BigInteger.ONE.shiftLeft(estimateExponent).max(lowerBound).min(upperBound);
+		final double confidence = 1 - (2 * Math.pow(2, -TRIALS));
+		return new ModelCount(estimate, lowerBound, upperBound, confidence);
+	}
+
+	private int countSatisfiableTrials(int xorCount) throws TimeoutException {
+		Integer count = satisfiableTrials.get(xorCount);
+		if (count == null) {
+			count = 0;
+			for (int i = 0; i < TRIALS; i++) {
+				if (isSatisfiableWithXors(xorCount)) {
+					count++;
+				}
+			}
+			satisfiableTrials.put(xorCount, count);
+		}
+		return count;
+	}
+
+	/**
+	 * Adds random XORs that are enabled by a fresh selector variable, solves under
+	 * the selector, and disables the XORs afterwards.
+	 */
+	private boolean isSatisfiableWithXors(int xorCount) throws TimeoutException {
+		final int variableCount = cnf.getVariableMap().size();
+		final int selector = solver.nextFreeVarId(true);
+		final VecInt assumptions = new VecInt();
+		assumptions.push(selector);
+		try {
+			for (int i = 0; i < xorCount; i++) {
+				final boolean parity = random.nextBoolean();
+				int chain = 0;
+				for (int variable = 1; variable <= variableCount; variable++) {
+					if (random.nextBoolean()) {
+						chain = chain == 0 ? addEquivalence(selector, variable) : addXor(selector, chain, variable);
+					}
+				}
+				if (chain == 0) {
+					if (parity) {
+						return false;
+					}
+				} else {
+					assumptions.push(parity ? chain : -chain);
+				}
+			}
+			return isSatisfiable(assumptions);
+		} catch (final ContradictionException e) {
+			return false;
+		} finally {
+			try {
+				solver.addClause(new VecInt(new int[] { -selector }));
+			} catch (final ContradictionException e) {
+			}
+		}
+	}
+
+	/**
+	 * @return a new variable y with y = x, if the selector is true
+	 */
+	private int addEquivalence(int selector, int x) throws ContradictionException {
+		final int y = solver.nextFreeVarId(true);
+		solver.addClause(new VecInt(new int[] { -selector, -y, x }));
+		solver.addClause(new VecInt(new int[] { -selector, y, -x }));
+		return y;
+	}
+
+	/**
+	 * @return a new variable y with y = a xor b, if the selector is true
+	 */
+	private int addXor(int selector, int a, int b) throws ContradictionException {
+		final int y = solver.nextFreeVarId(true);
+		solver.addClause(new VecInt(new int[] { -selector, -y, a, b }));
+		solver.addClause(new VecInt(new int[] { -selector, -y, -a, -b }));
+		solver.addClause(new VecInt(new int[] { -selector, y, -a, b }));
+		solver.addClause(new VecInt(new int[] { -selector, y, a, -b }));
+		return y;
+	}
+
+	private boolean isSatisfiable(IVecInt assumptions) throws TimeoutException {
+		final long remaining = deadline - System.currentTimeMillis();
+		if (remaining <= 0) {
+			throw new TimeoutException();
+		}
+		solver.setTimeoutMs(remaining);
+		return solver.isSatisfiable(assumptions);
+	}
+
+}
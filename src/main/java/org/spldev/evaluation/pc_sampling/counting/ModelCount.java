@@ -0,0 +1,69 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.counting;
+
+import java.math.*;
+
+/**
+ * Number of configurations of a model. Either exact or an estimate with lower
+ * and upper bounds that hold with the given confidence.
+ */
+public class ModelCount {
+
+	private final BigInteger estimate;
+	private final BigInteger lowerBound;
+	private final BigInteger upperBound;
+	private final double confidence;
+
+	public ModelCount(BigInteger estimate, BigInteger lowerBound, BigInteger upperBound, double confidence) {
+		this.estimate = estimate;
+		this.lowerBound = lowerBound;
+		this.upperBound = upperBound;
+		this.confidence = confidence;
+	}
+
+	public static ModelCount exact(BigInteger count) {
+		return new ModelCount(count, count, count, 1);
+	}
+
+	public BigInteger getEstimate() {
+		return estimate;
+	}
+
+	public BigInteger getLowerBound() {
+		return lowerBound;
+	}
+
+	public BigInteger getUpperBound() {
+		return upperBound;
+	}
+
+	public double getConfidence() {
+		return confidence;
+	}
+
+	public boolean isExact() {
+		return confidence >= 1;
+	}
+
+}
@@ -0,0 +1,172 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.counting;
+
+import java.io.*;
+import java.math.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.spldev.analysis.sat4j.*;
+import org.spldev.clauses.*;
+import org.spldev.evaluation.pc_sampling.io.*;
+import org.spldev.util.data.Result;
+import org.spldev.util.job.Executor;
+import org.spldev.util.logging.*;
+
+/**
+ * Counts configurations of CNFs on background threads. Each CNF is first
+ * counted exactly within the time budget and, if that fails, approximated with
+ * {@link ApproximateModelCounter}. Results are stored by the hash of the CNF in
+ * a persistent cache file, so each model is counted only once across runs.
+ * Approximate results are stored together with the time budget they were
+ * computed with and are recomputed when a later run has a larger budget.
+ */
+public class ModelCounter implements AutoCloseable {
+
+	private static final String SEPARATOR = ";";
+
+	private final Path cacheFile;
+	private final int timeout;
+	private final long seed;
+	private final ExecutorService executor;
+	private final Map<String, CachedCount> cache = new HashMap<>();
+
+	private static class CachedCount {
+		private final ModelCount count;
+		private final int timeout;
+
+		private CachedCount(ModelCount count, int timeout) {
+			this.count = count;
+			this.timeout = timeout;
+		}
+
+		private boolean isSufficient(int timeout) {
+			return count.isExact() || (this.timeout >= timeout);
+		}
+
+		private boolean isBetterThan(CachedCount other) {
+			return (other == null) || (!other.count.isExact() && (count.isExact() || (timeout > other.timeout)));
+		}
+	}
+
+	/**
+	 * @param timeout the time budget per CNF for the exact and approximate
+	 *                counting in milliseconds each
+	 */
+	public ModelCounter(Path cacheFile, int timeout, int threads, long seed) {
+		this.cacheFile = cacheFile;
+		this.timeout = timeout;
+		this.seed = seed;
+		executor = Executors.newFixedThreadPool(
+			threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+		readCache();
+	}
+
+	public CompletableFuture<ModelCount> count(CNF cnf) {
+		final String hash = StageCache.hash(cnf);
+		synchronized (cache) {
+			final CachedCount cachedCount = cache.get(hash);
+			if ((cachedCount != null) && cachedCount.isSufficient(timeout)) {
+				return CompletableFuture.completedFuture(cachedCount.count);
+			}
+		}
+		return CompletableFuture.supplyAsync(() -> {
+			final ModelCount count = computeCount(cnf);
+			if (count != null) {
+				writeCache(hash, count);
+			}
+			return count;
+		}, executor);
+	}
+
+	private ModelCount computeCount(CNF cnf) {
+		final CountSolutionsAnalysis countAnalysis = new CountSolutionsAnalysis();
+		countAnalysis.setTimeout(timeout);
+		final Result<BigInteger> result = Executor.run(countAnalysis::execute, cnf);
+		if (result.isPresent() && (result.get() != null)) {
+			return ModelCount.exact(result.get());
+		}
+		Logger.logDebug("Exact model counting timed out, approximating");
+		return new ApproximateModelCounter(cnf, seed, timeout).count();
+	}
+
+	private void readCache() {
+		if (Files.exists(cacheFile)) {
+			try {
+				for (final String line : Files.readAllLines(cacheFile, StandardCharsets.UTF_8)) {
+					final String[] values = line.split(SEPARATOR);
+					if (values.length >= 5) {
+						final ModelCount count = new ModelCount(new BigInteger(values[1]), new BigInteger(values[2]),
+							new BigInteger(values[3]), Double.parseDouble(values[4]));
+						// entries without a time budget are only trusted if they are exact
+						final int countTimeout = values.length > 5 ? Integer.parseInt(values[5]) : -1;
+						if (count.isExact() || (countTimeout >= 0)) {
+							final CachedCount cachedCount = new CachedCount(count, countTimeout);
+							if (cachedCount.isBetterThan(cache.get(values[0]))) {
+								cache.put(values[0], cachedCount);
+							}
+						}
+					}
+				}
+			} catch (IOException | NumberFormatException e) {
+				Logger.logError(e);
+			}
+		}
+	}
+
+	private void writeCache(String hash, ModelCount count) {
+		final String line = hash + SEPARATOR + count.getEstimate() + SEPARATOR + count.getLowerBound() + SEPARATOR
+			+ count.getUpperBound() + SEPARATOR + count.getConfidence() + SEPARATOR + timeout + System.lineSeparator();
+		synchronized (cache) {
+			final CachedCount cachedCount = new CachedCount(count, timeout);
+			if (!cachedCount.isBetterThan(cache.get(hash))) {
+				return;
+			}
+			cache.put(hash, cachedCount);
+			try {
+				Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+				Files.write(cacheFile, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND);
+			} catch (final IOException e) {
+				Logger.logError(e);
+			}
+		}
+	}
+
+	/**
+	 * Waits for all pending counts.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
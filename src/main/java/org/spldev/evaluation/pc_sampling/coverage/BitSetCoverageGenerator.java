@@ -0,0 +1,384 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.coverage;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.spldev.analysis.sat4j.twise.*;
+import org.spldev.clauses.*;
+
+/**
+ * Computes the same t-wise coverage as
+ * {@link TWiseStatisticGenerator#getCoverage(List, List, int, TWiseStatisticGenerator.ConfigurationScore, boolean)}
+ * with {@link TWiseStatisticGenerator.ConfigurationScore#NONE}, but on
+ * {@link SampleMatrix bit matrices}. A combination of presence conditions is
+ * covered by a sample, if the conjunction of their bit vectors is non-zero.
+ * <br>
+ * The combinations are split into tasks (small groups are batched, large
+ * groups are split by the first condition of a combination) that are executed
+ * in parallel. The counts of all tasks are summed up afterwards, so the result
+ * does not depend on the order of execution.
+ */
+public class BitSetCoverageGenerator {
+
+	private static final double BATCH_SIZE = 1 << 14;
+
+	private final ForkJoinPool pool;
+	private final TWiseConfigurationUtil util;
+	private final int variableCount;
+
+	/**
+	 * @param util the utility used for checking the validity of combinations that
+	 *             are not covered by any sample. As it is not thread-safe, these
+	 *             checks are synchronized on it.
+	 * @param pool the pool that executes the tasks
+	 */
+	public BitSetCoverageGenerator(TWiseConfigurationUtil util, ForkJoinPool pool) {
+		this.util = util;
+		this.pool = pool;
+		variableCount = util.getCnf().getVariableMap().size();
+	}
+
+	public List<SampleMatrix> createMatrices(List<? extends List<? extends LiteralList>> samples) {
+		final List<Callable<SampleMatrix>> tasks = new ArrayList<>(samples.size());
+		for (final List<? extends LiteralList> sample : samples) {
+			tasks.add(() -> new SampleMatrix(sample, variableCount));
+		}
+		return invokeAll(tasks);
+	}
+
+	/**
+	 * Computes the bit vectors of all presence conditions of a grouping for all
+	 * samples. The result can be used for any t.
+	 */
+	public CoverageGrouping prepare(List<SampleMatrix> samples,
+		List<List<PresenceCondition>> groupedPresenceConditions) {
+		final List<Callable<long[][][]>> tasks = new ArrayList<>(samples.size());
+		for (final SampleMatrix sample : samples) {
+			tasks.add(() -> {
+				final long[][][] sampleColumns = new long[groupedPresenceConditions.size()][][];
+				final IdentityHashMap<PresenceCondition, long[]> cache = new IdentityHashMap<>();
+				int groupIndex = 0;
+				for (final List<PresenceCondition> conditions : groupedPresenceConditions) {
+					final long[][] groupColumns = new long[conditions.size()][];
+					int conditionIndex = 0;
+					for (final PresenceCondition condition : conditions) {
+						groupColumns[conditionIndex++] = cache.computeIfAbsent(condition, sample::getColumn);
+					}
+					sampleColumns[groupIndex++] = groupColumns;
+				}
+				return sampleColumns;
+			});
+		}
+		return new CoverageGrouping(groupedPresenceConditions, samples, invokeAll(tasks));
+	}
+
+	/**
+	 * @param recordUncovered whether combinations that are not covered by any
+	 *                        sample should be checked for validity
+	 */
+	public List<CoverageStatistic> getCoverage(CoverageGrouping grouping, int t, boolean recordUncovered) {
+		final List<CoverageCurve> curves = getCoverageCurves(grouping, t, recordUncovered);
+		final List<CoverageStatistic> statistics = new ArrayList<>(curves.size());
+		for (final CoverageCurve curve : curves) {
+			statistics.add(curve.getStatistic(curve.getConfigurationCount()));
+		}
+		return statistics;
+	}
+
+	/**
+	 * Computes the coverage of every prefix of every sample in one pass. For each
+	 * combination, the index of the first configuration of a sample that covers
+	 * it is recorded. Only combinations that are not covered by the whole sample
+	 * are checked for validity, so the counts of a prefix match those of
+	 * {@link TWiseStatisticGenerator} if the configurations after the prefix are
+	 * valid (see {@link CoverageComparison}).
+	 *
+	 * @param recordUncovered whether combinations that are not covered by any
+	 *                        sample should be checked for validity
+	 */
+	public List<CoverageCurve> getCoverageCurves(CoverageGrouping grouping, int t, boolean recordUncovered) {
+		final ConcurrentLinkedQueue<CoverageTask> tasks = new ConcurrentLinkedQueue<>();
+		int batchStart = 0;
+		double batchSize = 0;
+		final int groupCount = grouping.groups.size();
+		for (int groupIndex = 0; groupIndex < groupCount; groupIndex++) {
+			final int size = grouping.groups.get(groupIndex).size();
+			if (size == 0) {
+				continue;
+			}
+			final int n = Math.max(size, t);
+			final double combinationCount = binomial(n, t);
+			if (combinationCount >= BATCH_SIZE) {
+				if (batchStart < groupIndex) {
+					tasks.add(new CoverageTask(batchStart, groupIndex, 0, -1));
+				}
+				for (int first = 0; first <= (n - t); first++) {
+					tasks.add(new CoverageTask(groupIndex, groupIndex + 1, first, first + 1));
+				}
+				batchStart = groupIndex + 1;
+				batchSize = 0;
+			} else {
+				batchSize += combinationCount;
+				if (batchSize >= BATCH_SIZE) {
+					tasks.add(new CoverageTask(batchStart, groupIndex + 1, 0, -1));
+					batchStart = groupIndex + 1;
+					batchSize = 0;
+				}
+			}
+		}
+		if (batchStart < groupCount) {
+			tasks.add(new CoverageTask(batchStart, groupCount, 0, -1));
+		}
+
+		// Each worker takes tasks from the queue and sums up its counts locally
+		final List<Callable<Counts>> workers = new ArrayList<>(pool.getParallelism());
+		for (int i = 0; i < pool.getParallelism(); i++) {
+			workers.add(() -> {
+				final Counts counts = new Counts(grouping, t, recordUncovered);
+				for (CoverageTask task = tasks.poll(); task != null; task = tasks.poll()) {
+					task.run(counts);
+				}
+				return counts;
+			});
+		}
+		final Counts counts = new Counts(grouping, t, recordUncovered);
+		for (final Counts workerCounts : invokeAll(workers)) {
+			counts.add(workerCounts);
+		}
+
+		final List<CoverageCurve> curves = new ArrayList<>(counts.sampleCount);
+		for (int s = 0; s < counts.sampleCount; s++) {
+			curves.add(new CoverageCurve(counts.valid[s], counts.invalid[s],
+				recordUncovered ? counts.valid[s] : counts.combinations[s], counts.firstCovering[s]));
+		}
+		return curves;
+	}
+
+	private boolean isCombinationValid(ClauseList combinedCondition) {
+		synchronized (util) {
+			return util.isCombinationValid(combinedCondition);
+		}
+	}
+
+	private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+		final List<T> results = new ArrayList<>(tasks.size());
+		for (final Future<T> future : pool.invokeAll(tasks)) {
+			try {
+				results.add(future.get());
+			} catch (final ExecutionException e) {
+				final Throwable cause = e.getCause();
+				throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException();
+			}
+		}
+		return results;
+	}
+
+	private static double binomial(int n, int k) {
+		double result = 1;
+		for (int i = 1; i <= k; i++) {
+			result = (result * ((n - k) + i)) / i;
+		}
+		return result;
+	}
+
+	/**
+	 * Counts of one worker and the state it reuses across tasks.
+	 */
+	private class Counts {
+
+		private final CoverageGrouping grouping;
+		private final int t;
+		private final boolean recordUncovered;
+		private final int sampleCount;
+
+		private final long[] valid;
+		private final long[] invalid;
+		private final long[] combinations;
+		// firstCovering[s][i] is the number of combinations that are covered by the
+		// i-th configuration of sample s, but by none of its predecessors
+		private final long[][] firstCovering;
+
+		// levels[s][i] contains the configurations of sample s that cover the first
+		// i + 1 conditions of the current combination
+		private final long[][][] levels;
+		private final TWiseCombiner combiner;
+		private final ClauseList combinedCondition = new ClauseList();
+		private final PresenceCondition[] conditionArray;
+		private final int[] conditionIndices;
+		private final int[] combination;
+
+		Counts(CoverageGrouping grouping, int t, boolean recordUncovered) {
+			this.grouping = grouping;
+			this.t = t;
+			this.recordUncovered = recordUncovered;
+			sampleCount = grouping.samples.size();
+			valid = new long[sampleCount];
+			invalid = new long[sampleCount];
+			combinations = new long[sampleCount];
+			firstCovering = new long[sampleCount][];
+			levels = new long[sampleCount][t][];
+			for (int s = 0; s < sampleCount; s++) {
+				final SampleMatrix sample = grouping.samples.get(s);
+				firstCovering[s] = new long[sample.getConfigurationCount()];
+				for (int i = 0; i < t; i++) {
+					levels[s][i] = new long[sample.getWordCount()];
+				}
+			}
+			combiner = new TWiseCombiner(variableCount);
+			conditionArray = new PresenceCondition[t];
+			conditionIndices = new int[t];
+			combination = new int[t];
+		}
+
+		void add(Counts other) {
+			for (int s = 0; s < sampleCount; s++) {
+				valid[s] += other.valid[s];
+				invalid[s] += other.invalid[s];
+				combinations[s] += other.combinations[s];
+				final long[] histogram = firstCovering[s];
+				final long[] otherHistogram = other.firstCovering[s];
+				for (int i = 0; i < histogram.length; i++) {
+					histogram[i] += otherHistogram[i];
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Evaluates all combinations of a range of groups or, if a first-condition
+	 * range is given, the combinations of a single group that start with one of
+	 * these conditions.
+	 */
+	private class CoverageTask {
+
+		private final int groupFrom, groupTo;
+		private final int firstFrom, firstTo;
+
+		CoverageTask(int groupFrom, int groupTo, int firstFrom, int firstTo) {
+			this.groupFrom = groupFrom;
+			this.groupTo = groupTo;
+			this.firstFrom = firstFrom;
+			this.firstTo = firstTo;
+		}
+
+		void run(Counts counts) {
+			final CoverageGrouping grouping = counts.grouping;
+			final int t = counts.t;
+			final int sampleCount = counts.sampleCount;
+			final int[] combination = counts.combination;
+			final int[] conditionIndices = counts.conditionIndices;
+
+			for (int groupIndex = groupFrom; groupIndex < groupTo; groupIndex++) {
+				final List<PresenceCondition> conditions = grouping.groups.get(groupIndex);
+				final int size = conditions.size();
+				if (size == 0) {
+					continue;
+				}
+				// Groups with less than t conditions are padded with their first condition
+				final int n = Math.max(size, t);
+				final int first = firstTo < 0 ? 0 : firstFrom;
+				final int last = firstTo < 0 ? (n - t) + 1 : firstTo;
+
+				for (int i = 0; i < t; i++) {
+					combination[i] = first + i;
+				}
+				int changedIndex = 0;
+				while (true) {
+					for (int i = changedIndex; i < t; i++) {
+						conditionIndices[i] = combination[i] < size ? combination[i] : 0;
+					}
+
+					boolean anyCovered = false;
+					for (int s = 0; s < sampleCount; s++) {
+						final long[][] columns = grouping.columns.get(s)[groupIndex];
+						final long[][] sampleLevels = counts.levels[s];
+						for (int i = changedIndex; i < t; i++) {
+							final long[] column = columns[conditionIndices[i]];
+							if (i == 0) {
+								System.arraycopy(column, 0, sampleLevels[0], 0, column.length);
+							} else {
+								BitVectors.and(sampleLevels[i], sampleLevels[i - 1], column);
+							}
+						}
+						final int index = BitVectors.nextSetBit(sampleLevels[t - 1], 0);
+						if (index >= 0) {
+							counts.firstCovering[s][index]++;
+							anyCovered = true;
+						}
+						counts.combinations[s]++;
+					}
+
+					if (counts.recordUncovered) {
+						boolean isValid = anyCovered;
+						if (!isValid) {
+							for (int i = 0; i < t; i++) {
+								counts.conditionArray[i] = conditions.get(conditionIndices[i]);
+							}
+							counts.combinedCondition.clear();
+							counts.combiner.combineConditions(counts.conditionArray, counts.combinedCondition);
+							isValid = isCombinationValid(counts.combinedCondition);
+						}
+						final long[] validOrInvalid = isValid ? counts.valid : counts.invalid;
+						for (int s = 0; s < sampleCount; s++) {
+							validOrInvalid[s]++;
+						}
+					}
+
+					changedIndex = nextCombination(combination, n);
+					if ((changedIndex < 0) || (combination[0] >= last)) {
+						break;
+					}
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Advances the given combination to its lexicographic successor.
+	 *
+	 * @return the first changed position or -1, if there is no successor
+	 */
+	private static int nextCombination(int[] combination, int n) {
+		final int t = combination.length;
+		int i = t - 1;
+		while ((i >= 0) && (combination[i] == ((n - t) + i))) {
+			i--;
+		}
+		if (i < 0) {
+			return -1;
+		}
+		combination[i]++;
+		for (int j = i + 1; j < t; j++) {
+			combination[j] = combination[j - 1] + 1;
+		}
+		return i;
+	}
+
+}
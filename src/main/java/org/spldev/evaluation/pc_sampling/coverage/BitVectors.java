@@ -0,0 +1,116 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.coverage;
+
+/**
+ * Word-wise operations on bit vectors. The loops are kept simple so that the
+ * JIT compiler can vectorize them.
+ */
+public final class BitVectors {
+
+	private BitVectors() {
+	}
+
+	/**
+	 * Computes {@code target &= source}.
+	 *
+	 * @return {@code true} if the result has at least one bit set
+	 */
+	public static boolean and(long[] target, long[] source) {
+		long any = 0;
+		for (int i = 0; i < target.length; i++) {
+			final long word = target[i] & source[i];
+			target[i] = word;
+			any |= word;
+		}
+		return any != 0;
+	}
+
+	/**
+	 * Computes {@code target = first & second}.
+	 *
+	 * @return {@code true} if the result has at least one bit set
+	 */
+	public static boolean and(long[] target, long[] first, long[] second) {
+		long any = 0;
+		for (int i = 0; i < target.length; i++) {
+			final long word = first[i] & second[i];
+			target[i] = word;
+			any |= word;
+		}
+		return any != 0;
+	}
+
+	/**
+	 * Computes {@code target |= source}.
+	 */
+	public static void or(long[] target, long[] source) {
+		for (int i = 0; i < target.length; i++) {
+			target[i] |= source[i];
+		}
+	}
+
+	/**
+	 * @return {@code true} if at least one bit is set
+	 */
+	public static boolean any(long[] vector) {
+		long any = 0;
+		for (int i = 0; i < vector.length; i++) {
+			any |= vector[i];
+		}
+		return any != 0;
+	}
+
+	/**
+	 * @return the index of the first set bit at or after the given index or -1, if
+	 *         there is none
+	 */
+	public static int nextSetBit(long[] vector, int fromIndex) {
+		int word = fromIndex >>> 6;
+		if (word >= vector.length) {
+			return -1;
+		}
+		long bits = vector[word] & (-1L << fromIndex);
+		while (bits == 0) {
+			if (++word == vector.length) {
+				return -1;
+			}
+			bits = vector[word];
+		}
+		return (word * Long.SIZE) + Long.numberOfTrailingZeros(bits);
+	}
+
+	/**
+	 * Clears all bits with an index greater than or equal to the given length.
+	 */
+	public static void clearTail(long[] vector, int length) {
+		final int word = length >>> 6;
+		if (word < vector.length) {
+			vector[word] &= (1L << length) - 1;
+			for (int i = word + 1; i < vector.length; i++) {
+				vector[i] = 0;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,222 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.coverage;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.spldev.analysis.sat4j.solver.*;
+import org.spldev.analysis.sat4j.twise.*;
+import org.spldev.analysis.sat4j.twise.TWiseStatisticGenerator.*;
+import org.spldev.clauses.*;
+import org.spldev.clauses.LiteralList.*;
+import org.spldev.formula.structure.atomic.literal.*;
+
+/**
+ * Checks that {@link BitSetCoverageGenerator} computes exactly the same
+ * coverage as {@link TWiseStatisticGenerator} for random samples, including
+ * partial configurations, for t = 1 and 2, with and without checking uncovered
+ * combinations for validity. Every prefix is compared for samples of valid
+ * configurations, whole samples are also compared for samples that may contain
+ * invalid configurations. Exits with status 1 if any count differs.
+ * <br>
+ * Usage: {@code CoverageComparison [cases] [seed]}
+ */
+public class CoverageComparison {
+
+	private static final int VARIABLE_COUNT = 12;
+
+	public static void main(String[] args) {
+		final int cases = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		final long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		int mismatches = 0;
+		try {
+			for (int i = 0; i < cases; i++) {
+				mismatches += compare(new Random(seed + i), pool, "case " + i);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		System.out.println(mismatches == 0 ? "OK" : mismatches + " mismatches");
+		System.exit(mismatches == 0 ? 0 : 1);
+	}
+
+	private static int compare(Random random, ForkJoinPool pool, String name) {
+		final CNF cnf = createCNF(random);
+		final TWiseConfigurationUtil util = new TWiseConfigurationUtil(cnf, new Sat4JSolver(cnf));
+		util.computeRandomSample(1000);
+		util.computeMIG(false, false);
+		final TWiseStatisticGenerator statisticGenerator = new TWiseStatisticGenerator(util);
+		final BitSetCoverageGenerator bitSetGenerator = new BitSetCoverageGenerator(util, pool);
+
+		// The last sample may contain invalid configurations
+		final List<List<LiteralList>> samples = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			samples.add(createSample(random, cnf, true));
+		}
+		samples.add(createSample(random, cnf, false));
+		final List<List<PresenceCondition>> nodes = new PresenceConditionManager(util, createExpressions(random))
+			.getGroupedPresenceConditions();
+		final CoverageGrouping grouping = bitSetGenerator.prepare(bitSetGenerator.createMatrices(samples), nodes);
+
+		final List<List<LiteralList>> prefixSamples = new ArrayList<>();
+		final List<int[]> prefixes = new ArrayList<>();
+		for (int s = 0; s < samples.size(); s++) {
+			final int minSize = s < (samples.size() - 1) ? 0 : samples.get(s).size();
+			for (int size = minSize; size <= samples.get(s).size(); size++) {
+				prefixSamples.add(samples.get(s).subList(0, size));
+				prefixes.add(new int[] { s, size });
+			}
+		}
+
+		int mismatches = 0;
+		for (int t = 1; t <= 2; t++) {
+			for (final boolean recordUncovered : new boolean[] { false, true }) {
+				final List<CoverageStatistic> expected = statisticGenerator.getCoverage(prefixSamples, nodes, t,
+					ConfigurationScore.NONE, recordUncovered);
+				final List<CoverageCurve> curves = bitSetGenerator.getCoverageCurves(grouping, t, recordUncovered);
+				for (int i = 0; i < prefixes.size(); i++) {
+					final int[] prefix = prefixes.get(i);
+					final CoverageStatistic actual = curves.get(prefix[0]).getStatistic(prefix[1]);
+					if (!equals(expected.get(i), actual)) {
+						System.out.println(name + ", t = " + t + ", recordUncovered = " + recordUncovered
+							+ ", sample " + prefix[0] + ", prefix " + prefix[1] + ": expected "
+							+ toString(expected.get(i)) + ", actual " + toString(actual));
+						mismatches++;
+					}
+				}
+			}
+		}
+		return mismatches;
+	}
+
+	private static CNF createCNF(Random random) {
+		final List<String> names = new ArrayList<>(VARIABLE_COUNT);
+		for (int i = 1; i <= VARIABLE_COUNT; i++) {
+			names.add("v" + i);
+		}
+		// Few binary clauses, so that some combinations are invalid. Each clause is
+		// satisfied by the same assignment, so the CNF is satisfiable.
+		final boolean[] assignment = new boolean[VARIABLE_COUNT];
+		for (int v = 0; v < VARIABLE_COUNT; v++) {
+			assignment[v] = random.nextBoolean();
+		}
+		final List<LiteralList> clauses = new ArrayList<>();
+		while (clauses.size() < 4) {
+			final int first = randomLiteral(random);
+			final int second = randomLiteral(random);
+			if ((Math.abs(first) != Math.abs(second))
+				&& ((assignment[Math.abs(first) - 1] == (first > 0))
+					|| (assignment[Math.abs(second) - 1] == (second > 0)))) {
+				clauses.add(new LiteralList(new int[] { first, second }, Order.NATURAL));
+			}
+		}
+		return new CNF(VariableMap.fromNames(names), clauses);
+	}
+
+	/**
+	 * @param valid whether all configurations must satisfy the given CNF. Partial
+	 *              configurations are then created from valid configurations.
+	 * @return configurations in index order, which are partial in half of the
+	 *         samples ({@code 0} marks an unassigned variable)
+	 */
+	private static List<LiteralList> createSample(Random random, CNF cnf, boolean valid) {
+		final int size = random.nextInt(8);
+		final boolean partial = random.nextBoolean();
+		final List<LiteralList> sample = new ArrayList<>(size);
+		while (sample.size() < size) {
+			final int[] literals = new int[VARIABLE_COUNT];
+			for (int v = 0; v < VARIABLE_COUNT; v++) {
+				literals[v] = random.nextBoolean() ? v + 1 : -(v + 1);
+			}
+			if (valid && !satisfies(literals, cnf)) {
+				continue;
+			}
+			if (partial) {
+				for (int v = 0; v < VARIABLE_COUNT; v++) {
+					if (random.nextInt(4) == 0) {
+						literals[v] = 0;
+					}
+				}
+			}
+			sample.add(new LiteralList(literals, Order.INDEX, false));
+		}
+		return sample;
+	}
+
+	private static boolean satisfies(int[] literals, CNF cnf) {
+		clauseLoop: for (final LiteralList clause : cnf.getClauses()) {
+			for (final int literal : clause.getLiterals()) {
+				if (literals[Math.abs(literal) - 1] == literal) {
+					continue clauseLoop;
+				}
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return groups of presence conditions in conjunctive normal form with one or
+	 *         two clauses of one or two literals each
+	 */
+	private static List<List<ClauseList>> createExpressions(Random random) {
+		final List<List<ClauseList>> groups = new ArrayList<>();
+		for (int g = 0; g < 3; g++) {
+			final int size = 1 + random.nextInt(6);
+			final List<ClauseList> group = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				final ClauseList expression = new ClauseList();
+				for (int c = 1 + random.nextInt(2); c > 0; c--) {
+					expression.add(random.nextBoolean() ? new LiteralList(new int[] { randomLiteral(random) },
+						Order.NATURAL)
+						: new LiteralList(new int[] { randomLiteral(random), randomLiteral(random) }, Order.NATURAL));
+				}
+				group.add(expression);
+			}
+			groups.add(group);
+		}
+		return groups;
+	}
+
+	private static int randomLiteral(Random random) {
+		final int variable = 1 + random.nextInt(VARIABLE_COUNT);
+		return random.nextBoolean() ? variable : -variable;
+	}
+
+	private static boolean equals(CoverageStatistic expected, CoverageStatistic actual) {
+		return (expected.getNumberOfValidConditions() == actual.getNumberOfValidConditions())
+			&& (expected.getNumberOfInvalidConditions() == actual.getNumberOfInvalidConditions())
+			&& (expected.getNumberOfCoveredConditions() == actual.getNumberOfCoveredConditions())
+			&& (expected.getNumberOfUncoveredConditions() == actual.getNumberOfUncoveredConditions())
+			&& (Double.compare(expected.getCoverage(), actual.getCoverage()) == 0);
+	}
+
+	private static String toString(CoverageStatistic statistic) {
+		return "valid " + statistic.getNumberOfValidConditions() + ", invalid "
+			+ statistic.getNumberOfInvalidConditions() + ", covered " + statistic.getNumberOfCoveredConditions()
+			+ ", uncovered " + statistic.getNumberOfUncoveredConditions() + ", coverage " + statistic.getCoverage();
+	}
+
+}
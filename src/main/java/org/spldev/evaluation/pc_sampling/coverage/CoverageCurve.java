@@ -0,0 +1,72 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.coverage;
+
+import org.spldev.analysis.sat4j.twise.*;
+
+/**
+ * Coverage of all prefixes of a sample, i.e., how the coverage grows when
+ * configurations are added one by one.
+ */
+public class CoverageCurve {
+
+	private final long valid;
+	private final long invalid;
+	private final long uncoveredBase;
+	// covered[k] is the number of combinations covered by the first k
+	// configurations
+	private final long[] covered;
+
+	CoverageCurve(long valid, long invalid, long uncoveredBase, long[] firstCovering) {
+		this.valid = valid;
+		this.invalid = invalid;
+		this.uncoveredBase = uncoveredBase;
+		covered = new long[firstCovering.length + 1];
+		for (int i = 0; i < firstCovering.length; i++) {
+			covered[i + 1] = covered[i] + firstCovering[i];
+		}
+	}
+
+	public int getConfigurationCount() {
+		return covered.length - 1;
+	}
+
+	/**
+	 * @return the number of combinations covered by the first {@code prefixSize}
+	 *         configurations
+	 */
+	public long getNumberOfCoveredConditions(int prefixSize) {
+		return covered[prefixSize];
+	}
+
+	/**
+	 * @return the statistic of the sample that consists of the first
+	 *         {@code prefixSize} configurations
+	 */
+	public CoverageStatistic getStatistic(int prefixSize) {
+		final BitSetCoverageStatistic statistic = new BitSetCoverageStatistic();
+		statistic.setCounts(valid, invalid, covered[prefixSize], uncoveredBase - covered[prefixSize]);
+		return statistic;
+	}
+
+}
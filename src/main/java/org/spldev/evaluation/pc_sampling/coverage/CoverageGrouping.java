@@ -0,0 +1,47 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.coverage;
+
+import java.util.*;
+
+import org.spldev.analysis.sat4j.twise.*;
+
+/**
+ * The bit vectors of all presence conditions of a grouping for a list of
+ * samples. Created by {@link BitSetCoverageGenerator#prepare(List, List)} and
+ * only read afterwards.
+ */
+public class CoverageGrouping {
+
+	final List<List<PresenceCondition>> groups;
+	final List<SampleMatrix> samples;
+	// [sample][group][condition] -> configurations covering the condition
+	final List<long[][][]> columns;
+
+	CoverageGrouping(List<List<PresenceCondition>> groups, List<SampleMatrix> samples, List<long[][][]> columns) {
+		this.groups = groups;
+		this.samples = samples;
+		this.columns = columns;
+	}
+
+}
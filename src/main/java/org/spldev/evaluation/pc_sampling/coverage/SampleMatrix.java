@@ -0,0 +1,113 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.coverage;
+
+import java.util.*;
+
+import org.spldev.clauses.*;
+
+/**
+ * Column-major bit matrix of a sample. For each literal, there is one bit
+ * vector across all configurations, in which bit {@code i} is set if the
+ * {@code i}-th configuration contains the literal.
+ */
+public class SampleMatrix {
+
+	private final int configurationCount;
+	private final int wordCount;
+	private final long[][] columns;
+	private final long[] empty;
+
+	public SampleMatrix(List<? extends LiteralList> sample, int variableCount) {
+		configurationCount = sample.size();
+		wordCount = (configurationCount + (Long.SIZE - 1)) / Long.SIZE;
+		columns = new long[2 * variableCount][];
+		empty = new long[wordCount];
+		int configurationIndex = 0;
+		for (final LiteralList configuration : sample) {
+			final int word = configurationIndex >>> 6;
+			final long bit = 1L << configurationIndex;
+			for (final int literal : configuration.getLiterals()) {
+				if (literal != 0) {
+					final int columnIndex = getColumnIndex(literal);
+					long[] column = columns[columnIndex];
+					if (column == null) {
+						column = new long[wordCount];
+						columns[columnIndex] = column;
+					}
+					column[word] |= bit;
+				}
+			}
+			configurationIndex++;
+		}
+	}
+
+	private static int getColumnIndex(int literal) {
+		return literal > 0 ? (literal - 1) << 1 : ((-literal - 1) << 1) + 1;
+	}
+
+	public int getConfigurationCount() {
+		return configurationCount;
+	}
+
+	public int getWordCount() {
+		return wordCount;
+	}
+
+	/**
+	 * @return the configurations that contain the given literal (must not be
+	 *         modified)
+	 */
+	public long[] getColumn(int literal) {
+		final int columnIndex = getColumnIndex(literal);
+		if (columnIndex >= columns.length) {
+			return empty;
+		}
+		final long[] column = columns[columnIndex];
+		return column == null ? empty : column;
+	}
+
+	/**
+	 * @return the configurations that contain all literals of at least one clause
+	 *         of the given condition
+	 */
+	public long[] getColumn(ClauseList condition) {
+		if (wordCount == 0) {
+			return empty;
+		}
+		final long[] column = new long[wordCount];
+		final long[] clauseColumn = new long[wordCount];
+		for (final LiteralList clause : condition) {
+			Arrays.fill(clauseColumn, -1L);
+			for (final int literal : clause.getLiterals()) {
+				if (!BitVectors.and(clauseColumn, getColumn(literal))) {
+					break;
+				}
+			}
+			BitVectors.or(column, clauseColumn);
+		}
+		BitVectors.clearTail(column, configurationCount);
+		return column;
+	}
+
+}
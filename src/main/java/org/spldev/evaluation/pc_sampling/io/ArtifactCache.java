@@ -0,0 +1,100 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.io;
+
+import java.io.*;
+import java.lang.ref.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.concurrent.*;
+
+/**
+ * Process-wide cache for artifacts read from disk, such as PC lists and grouped
+ * expressions. Each file is loaded at most once, as long as its size and
+ * modification time do not change. Cached objects are shared between all
+ * callers and must not be modified.<br>
+ * Artifacts are only softly referenced, so they are reloaded rather than kept
+ * alive when memory runs low. Evaluations that process one system after
+ * another {@link #clear() clear} the cache when moving to the next system.
+ */
+public final class ArtifactCache {
+
+	@FunctionalInterface
+	public interface Loader<T> {
+		T load(Path file) throws Exception;
+	}
+
+	private static final class Entry {
+		private final FileTime lastModified;
+		private final long size;
+		private SoftReference<Object> value;
+
+		private Entry(BasicFileAttributes attributes) {
+			lastModified = attributes.lastModifiedTime();
+			size = attributes.size();
+		}
+
+		private boolean isValid(BasicFileAttributes attributes) {
+			return (size == attributes.size()) && lastModified.equals(attributes.lastModifiedTime());
+		}
+	}
+
+	private static final ConcurrentHashMap<Path, Entry> cache = new ConcurrentHashMap<>();
+
+	private ArtifactCache() {
+	}
+
+	/**
+	 * Returns the cached artifact for the given file or loads it with the given
+	 * loader. Concurrent requests for the same file wait for a single load.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T get(Path file, Loader<T> loader) throws Exception {
+		final Path key = file.toAbsolutePath().normalize();
+		final BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(key, BasicFileAttributes.class);
+		} catch (final NoSuchFileException e) {
+			cache.remove(key);
+			throw new FileNotFoundException(file.toString());
+		}
+		final Entry entry = cache.compute(key, (k, e) -> (e != null) && e.isValid(attributes) ? e : new Entry(attributes));
+		synchronized (entry) {
+			Object value = entry.value != null ? entry.value.get() : null;
+			if (value == null) {
+				value = loader.load(key);
+				entry.value = new SoftReference<>(value);
+			}
+			return (T) value;
+		}
+	}
+
+	public static void invalidate(Path file) {
+		cache.remove(file.toAbsolutePath().normalize());
+	}
+
+	public static void clear() {
+		cache.clear();
+	}
+
+}
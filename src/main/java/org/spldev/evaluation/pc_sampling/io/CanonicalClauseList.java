@@ -0,0 +1,97 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.io;
+
+import java.util.*;
+
+import org.spldev.clauses.*;
+
+/**
+ * Canonical form of a list of clauses, independent of the order of the clauses
+ * and of the literals within each clause and of duplicate clauses. Used as a
+ * key to detect equivalent presence conditions.
+ */
+public final class CanonicalClauseList {
+
+	private final int[][] clauses;
+	private final int hashCode;
+
+	public CanonicalClauseList(List<? extends LiteralList> clauseList) {
+		final int[][] sortedClauses = new int[clauseList.size()][];
+		for (int i = 0; i < sortedClauses.length; i++) {
+			final int[] literals = clauseList.get(i).getLiterals().clone();
+			Arrays.sort(literals);
+			sortedClauses[i] = literals;
+		}
+		Arrays.sort(sortedClauses, CanonicalClauseList::compare);
+		int size = 0;
+		for (int i = 0; i < sortedClauses.length; i++) {
+			if ((size == 0) || !Arrays.equals(sortedClauses[size - 1], sortedClauses[i])) {
+				sortedClauses[size++] = sortedClauses[i];
+			}
+		}
+		clauses = Arrays.copyOf(sortedClauses, size);
+		hashCode = Arrays.deepHashCode(clauses);
+	}
+
+	private static int compare(int[] clause1, int[] clause2) {
+		final int length = Math.min(clause1.length, clause2.length);
+		for (int i = 0; i < length; i++) {
+			final int diff = Integer.compare(clause1[i], clause2[i]);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return Integer.compare(clause1.length, clause2.length);
+	}
+
+	public int getClauseCount() {
+		return clauses.length;
+	}
+
+	public long getLiteralCount() {
+		long count = 0;
+		for (final int[] clause : clauses) {
+			count += clause.length;
+		}
+		return count;
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if ((obj == null) || (getClass() != obj.getClass())) {
+			return false;
+		}
+		final CanonicalClauseList other = (CanonicalClauseList) obj;
+		return (hashCode == other.hashCode) && Arrays.deepEquals(clauses, other.clauses);
+	}
+
+}
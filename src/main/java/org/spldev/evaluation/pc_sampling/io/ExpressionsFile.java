@@ -0,0 +1,292 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.io;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.spldev.clauses.*;
+import org.spldev.clauses.LiteralList.*;
+
+/**
+ * Binary file for the grouped presence conditions (the content of
+ * {@code Expressions}) of several groupings. Each distinct condition is stored
+ * once; groupings are stored as lists of condition indices. An index holds the
+ * offset of each condition, so conditions are decoded on first access only.
+ * <br>
+ * Layout (big endian):
+ *
+ * <pre>
+ * magic (4 bytes) | version (int) | grouping count (int) | condition count (int)
+ * | groupings (name (UTF), group count (int), groups (size (int), condition indices (int)))
+ * | conditions (see {@link #writeClauseList(DataOutputStream, List)})
+ * | condition offsets (long, condition count + 1)
+ * </pre>
+ */
+public class ExpressionsFile {
+
+	public static final String EXTENSION = "bexp";
+
+	private static final int MAGIC = 0x50434558; // PCEX
+	private static final int VERSION = 2;
+	private static final int GROUPINGS_OFFSET = 16;
+
+	/**
+	 * Collects the groupings of a system and shares equal conditions between
+	 * them.
+	 */
+	public static class Builder {
+
+		private final List<ClauseList> conditions = new ArrayList<>();
+		private final Map<ClauseList, Integer> conditionIndices = new HashMap<>();
+		private final LinkedHashMap<String, int[][]> groupings = new LinkedHashMap<>();
+
+		public void addGrouping(String name, List<? extends List<? extends ClauseList>> groups) {
+			final int[][] indices = new int[groups.size()][];
+			for (int i = 0; i < indices.length; i++) {
+				final List<? extends ClauseList> group = groups.get(i);
+				indices[i] = new int[group.size()];
+				for (int j = 0; j < indices[i].length; j++) {
+					final ClauseList condition = group.get(j);
+					Integer index = conditionIndices.get(condition);
+					if (index == null) {
+						index = conditions.size();
+						conditions.add(condition);
+						conditionIndices.put(condition, index);
+					}
+					indices[i][j] = index;
+				}
+			}
+			groupings.put(name, indices);
+		}
+
+		public boolean isEmpty() {
+			return groupings.isEmpty();
+		}
+
+		public void write(Path file) throws IOException {
+			final ByteArrayOutputStream data = new ByteArrayOutputStream();
+			final DataOutputStream out = new DataOutputStream(data);
+			for (final Map.Entry<String, int[][]> grouping : groupings.entrySet()) {
+				out.writeUTF(grouping.getKey());
+				out.writeInt(grouping.getValue().length);
+				for (final int[] group : grouping.getValue()) {
+					out.writeInt(group.length);
+					for (final int index : group) {
+						out.writeInt(index);
+					}
+				}
+			}
+			final long[] offsets = new long[conditions.size() + 1];
+			for (int i = 0; i < conditions.size(); i++) {
+				offsets[i] = GROUPINGS_OFFSET + out.size();
+				writeClauseList(out, conditions.get(i));
+			}
+			offsets[conditions.size()] = GROUPINGS_OFFSET + out.size();
+			for (final long offset : offsets) {
+				out.writeLong(offset);
+			}
+			out.flush();
+
+			final ByteBuffer header = ByteBuffer.allocate(GROUPINGS_OFFSET);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(groupings.size());
+			header.putInt(conditions.size());
+			header.flip();
+			writeFile(file, header, data);
+		}
+	}
+
+	private final MappedByteBuffer buffer;
+	private final int conditionCount;
+	private final int indexOffset;
+	private final LinkedHashMap<String, int[][]> groupings = new LinkedHashMap<>();
+	private final ClauseList[] conditions;
+
+	private ExpressionsFile(MappedByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not an expressions file");
+		}
+		final int version = buffer.getInt(4);
+		if (version != VERSION) {
+			throw new IOException("Unsupported expressions file version " + version);
+		}
+		final int groupingCount = buffer.getInt(8);
+		conditionCount = buffer.getInt(12);
+		indexOffset = (int) (buffer.capacity() - ((conditionCount + 1L) * Long.BYTES));
+		if ((indexOffset < GROUPINGS_OFFSET) || (getOffset(conditionCount) != indexOffset)) {
+			throw new IOException("Truncated expressions file");
+		}
+		conditions = new ClauseList[conditionCount];
+
+		final ByteBuffer groupingBuffer = buffer.duplicate();
+		groupingBuffer.position(GROUPINGS_OFFSET);
+		for (int i = 0; i < groupingCount; i++) {
+			final String name = readUTF(groupingBuffer);
+			final int[][] groups = new int[groupingBuffer.getInt()][];
+			for (int j = 0; j < groups.length; j++) {
+				groups[j] = new int[groupingBuffer.getInt()];
+				groupingBuffer.asIntBuffer().get(groups[j]);
+				groupingBuffer.position(groupingBuffer.position() + (groups[j].length * Integer.BYTES));
+			}
+			groupings.put(name, groups);
+		}
+	}
+
+	/**
+	 * Maps the given file into memory. Conditions are decoded on first access.
+	 */
+	public static ExpressionsFile read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new ExpressionsFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	public Set<String> getGroupings() {
+		return Collections.unmodifiableSet(groupings.keySet());
+	}
+
+	/**
+	 * @return the number of distinct conditions of all groupings
+	 */
+	public int getConditionCount() {
+		return conditionCount;
+	}
+
+	/**
+	 * @return the condition with the given index, which is shared by all
+	 *         groupings and must not be modified
+	 */
+	public ClauseList getCondition(int index) {
+		synchronized (conditions) {
+			ClauseList condition = conditions[index];
+			if (condition == null) {
+				final ByteBuffer conditionBuffer = buffer.duplicate();
+				conditionBuffer.position((int) getOffset(index));
+				condition = readClauseList(conditionBuffer);
+				conditions[index] = condition;
+			}
+			return condition;
+		}
+	}
+
+	/**
+	 * @return the groups of the given grouping, or {@code null}, if the file
+	 *         does not contain the grouping
+	 */
+	public List<List<ClauseList>> getExpressions(String grouping) {
+		final int[][] groups = groupings.get(grouping);
+		if (groups == null) {
+			return null;
+		}
+		final List<List<ClauseList>> expressions = new ArrayList<>(groups.length);
+		for (final int[] group : groups) {
+			final List<ClauseList> groupConditions = new ArrayList<>(group.length);
+			for (final int index : group) {
+				groupConditions.add(getCondition(index));
+			}
+			expressions.add(Collections.unmodifiableList(groupConditions));
+		}
+		return expressions;
+	}
+
+	private long getOffset(int index) {
+		return buffer.getLong(indexOffset + (index * Long.BYTES));
+	}
+
+	/**
+	 * Writes a clause list as: clause count (int), then for each clause its order
+	 * (int, -1 if unknown), literal count (int), and literals (int).
+	 */
+	static void writeClauseList(DataOutputStream out, List<? extends LiteralList> clauseList) throws IOException {
+		out.writeInt(clauseList.size());
+		for (final LiteralList clause : clauseList) {
+			final Order order = clause.getOrder();
+			final int[] literals = clause.getLiterals();
+			out.writeInt(order != null ? order.ordinal() : -1);
+			out.writeInt(literals.length);
+			for (final int literal : literals) {
+				out.writeInt(literal);
+			}
+		}
+	}
+
+	static ClauseList readClauseList(ByteBuffer buffer) {
+		final Order[] orders = Order.values();
+		final int size = buffer.getInt();
+		final ClauseList clauseList = new ClauseList(size);
+		for (int i = 0; i < size; i++) {
+			final int order = buffer.getInt();
+			final int[] literals = new int[buffer.getInt()];
+			buffer.asIntBuffer().get(literals);
+			buffer.position(buffer.position() + (literals.length * Integer.BYTES));
+			clauseList.add(new LiteralList(literals, order >= 0 ? orders[order] : Order.UNORDERED, false));
+		}
+		return clauseList;
+	}
+
+	static String readUTF(ByteBuffer buffer) {
+		// DataInputStream expects the length prefix in front of the encoded string
+		final int length = buffer.getShort() & 0xFFFF;
+		final byte[] bytes = new byte[length + 2];
+		bytes[0] = (byte) (length >>> 8);
+		bytes[1] = (byte) length;
+		buffer.get(bytes, 2, length);
+		try {
+			return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes to a temporary file that replaces the given file afterwards, so
+	 * existing mappings of the old file stay valid. Each writer uses its own
+	 * temporary file, so concurrent writers of the same file (e.g., workers on a
+	 * shared output directory) cannot mix their contents.
+	 */
+	static void writeFile(Path file, ByteBuffer header, ByteArrayOutputStream data) throws IOException {
+		final Path tempFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName() + ".",
+			".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				while (header.hasRemaining()) {
+					channel.write(header);
+				}
+				final ByteBuffer dataBuffer = ByteBuffer.wrap(data.toByteArray());
+				while (dataBuffer.hasRemaining()) {
+					channel.write(dataBuffer);
+				}
+			}
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+}
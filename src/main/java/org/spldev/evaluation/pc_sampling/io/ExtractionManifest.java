@@ -0,0 +1,219 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.io;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.stream.*;
+
+/**
+ * Records for each extracted source file its size, modification time, content
+ * hash, and the output files the extractor created for it. Stored as
+ * tab-separated text in the extraction directory.
+ */
+public class ExtractionManifest {
+
+	public static final String FILE_NAME = ".manifest";
+
+	public static final class Entry {
+		private final String path;
+		private final long size;
+		private final long lastModified;
+		private final String hash;
+		private final List<String> outputs;
+
+		public Entry(String path, long size, long lastModified, String hash, List<String> outputs) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+			this.outputs = outputs;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		public List<String> getOutputs() {
+			return outputs;
+		}
+	}
+
+	private final TreeMap<String, Entry> entries = new TreeMap<>();
+
+	/**
+	 * @return the manifest of the given extraction directory or an empty manifest,
+	 *         if there is none
+	 */
+	public static ExtractionManifest read(Path extractionPath) throws IOException {
+		final ExtractionManifest manifest = new ExtractionManifest();
+		final Path file = extractionPath.resolve(FILE_NAME);
+		if (Files.isRegularFile(file)) {
+			for (final String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+				final String[] values = line.split("\t");
+				if (values.length >= 4) {
+					manifest.put(new Entry(values[0], Long.parseLong(values[1]), Long.parseLong(values[2]), values[3],
+						Arrays.asList(Arrays.copyOfRange(values, 4, values.length))));
+				}
+			}
+		}
+		return manifest;
+	}
+
+	public void write(Path extractionPath) throws IOException {
+		final List<String> lines = new ArrayList<>(entries.size());
+		for (final Entry entry : entries.values()) {
+			final StringBuilder sb = new StringBuilder();
+			sb.append(entry.path);
+			sb.append('\t');
+			sb.append(entry.size);
+			sb.append('\t');
+			sb.append(entry.lastModified);
+			sb.append('\t');
+			sb.append(entry.hash);
+			for (final String output : entry.outputs) {
+				sb.append('\t');
+				sb.append(output);
+			}
+			lines.add(sb.toString());
+		}
+		Files.createDirectories(extractionPath);
+		Files.write(extractionPath.resolve(FILE_NAME), lines, StandardCharsets.UTF_8);
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public Entry get(String path) {
+		return entries.get(path);
+	}
+
+	public void put(Entry entry) {
+		entries.put(entry.path, entry);
+	}
+
+	public Collection<Entry> getEntries() {
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	/**
+	 * @return the SHA-256 hash of the content of the given file
+	 */
+	public static String hash(Path file) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+			final byte[] buffer = new byte[1 << 16];
+			while (in.read(buffer) != -1) {
+			}
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Assigns output files to the source files they were created for. An output
+	 * belongs to a source file in the same directory, if its name starts with the
+	 * name of the source file (e.g., {@code a.c.s} for {@code a.c}) or, if unique,
+	 * with the name of the source file without extension (e.g., {@code a.s} for
+	 * {@code a.c}).
+	 *
+	 * @param unattributed receives all outputs that cannot be assigned
+	 * @return the outputs of each source file
+	 */
+	public static Map<Path, List<Path>> attribute(Collection<Path> sources, Collection<Path> outputs,
+		Collection<Path> unattributed) {
+		final Map<Path, List<Path>> sourcesByDirectory = sources.stream()
+			.collect(Collectors.groupingBy(ExtractionManifest::getDirectory));
+		final Map<Path, List<Path>> attribution = new HashMap<>();
+		for (final Path source : sources) {
+			attribution.put(source, new ArrayList<>());
+		}
+		for (final Path output : outputs) {
+			final String outputName = output.getFileName().toString();
+			Path match = null;
+			int matchLength = -1;
+			final List<Path> stemMatches = new ArrayList<>();
+			for (final Path source : sourcesByDirectory.getOrDefault(getDirectory(output), Collections.emptyList())) {
+				final String sourceName = source.getFileName().toString();
+				if (matches(outputName, sourceName)) {
+					if (sourceName.length() > matchLength) {
+						match = source;
+						matchLength = sourceName.length();
+					}
+				} else {
+					final int extension = sourceName.lastIndexOf('.');
+					if ((extension > 0) && matches(outputName, sourceName.substring(0, extension))) {
+						stemMatches.add(source);
+					}
+				}
+			}
+			if ((match == null) && (stemMatches.size() == 1)) {
+				match = stemMatches.get(0);
+			}
+			if (match != null) {
+				attribution.get(match).add(output);
+			} else {
+				unattributed.add(output);
+			}
+		}
+		return attribution;
+	}
+
+	private static boolean matches(String outputName, String prefix) {
+		return outputName.equals(prefix) || outputName.startsWith(prefix + ".");
+	}
+
+	private static Path getDirectory(Path file) {
+		final Path parent = file.getParent();
+		return parent != null ? parent : Paths.get("");
+	}
+
+}
@@ -0,0 +1,212 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.io;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+import org.spldev.clauses.*;
+import org.spldev.formula.structure.atomic.literal.*;
+import org.spldev.pc_extraction.convert.*;
+
+/**
+ * Binary file for a {@link PresenceConditionList}. Stores the formula and the
+ * DNF of each presence condition and its negation. Equivalent DNFs (see
+ * {@link CanonicalClauseList}) are stored only once and referenced by index
+ * from the presence conditions. An index holds the offset of each stored DNF,
+ * so the formula or a subset of the presence conditions can be decoded without
+ * reading the rest.
+ * <br>
+ * Layout (big endian):
+ *
+ * <pre>
+ * magic (4 bytes) | version (int) | PC count (int) | PC name count (int)
+ * | DNF count (int) | padding (4 bytes)
+ * | variable names (int count, UTF strings) | formula clauses | DNFs
+ * | PCs (DNF index (int), negated DNF index (int)) | DNF offsets (long, DNF count + 1)
+ * </pre>
+ */
+public class PCListFile {
+
+	public static final String EXTENSION = "bpcl";
+
+	private static final int MAGIC = 0x5043504C; // PCPL
+	private static final int VERSION = 2;
+	private static final int FORMULA_OFFSET = 24;
+
+	private final MappedByteBuffer buffer;
+	private final int size;
+	private final int pcNameCount;
+	private final int dnfCount;
+	private final int indexOffset;
+	private final int pcOffset;
+	private CNF formula;
+
+	private PCListFile(MappedByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a PC list file");
+		}
+		final int version = buffer.getInt(4);
+		if (version != VERSION) {
+			throw new IOException("Unsupported PC list file version " + version);
+		}
+		size = buffer.getInt(8);
+		pcNameCount = buffer.getInt(12);
+		dnfCount = buffer.getInt(16);
+		indexOffset = (int) (buffer.capacity() - ((dnfCount + 1L) * Long.BYTES));
+		pcOffset = indexOffset - (size * 2 * Integer.BYTES);
+		if ((pcOffset < FORMULA_OFFSET) || (getOffset(dnfCount) != pcOffset)) {
+			throw new IOException("Truncated PC list file");
+		}
+	}
+
+	/**
+	 * Maps the given file into memory. The formula and the presence conditions
+	 * are decoded on access.
+	 */
+	public static PCListFile read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new PCListFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	public static void write(Path file, PresenceConditionList pcList) throws IOException {
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(data);
+		final CNF formula = pcList.getFormula();
+		final List<String> names = formula.getVariableMap().getNames();
+		out.writeInt(names.size());
+		for (final String name : names) {
+			out.writeUTF(name);
+		}
+		ExpressionsFile.writeClauseList(out, formula.getClauses());
+
+		// Canonicalize in parallel, then assign indices in the order of the list
+		final List<CanonicalClauseList[]> keys = pcList.parallelStream()
+			.map(pc -> new CanonicalClauseList[] { new CanonicalClauseList(pc.getDnf().getClauses()),
+				new CanonicalClauseList(pc.getNegatedDnf().getClauses()) })
+			.collect(Collectors.toList());
+		final Map<CanonicalClauseList, Integer> dnfIndices = new HashMap<>();
+		final List<Long> offsets = new ArrayList<>();
+		final int[] pcIndices = new int[pcList.size() * 2];
+		for (int i = 0; i < pcList.size(); i++) {
+			final PresenceCondition pc = pcList.get(i);
+			for (int j = 0; j < 2; j++) {
+				Integer index = dnfIndices.get(keys.get(i)[j]);
+				if (index == null) {
+					index = offsets.size();
+					dnfIndices.put(keys.get(i)[j], index);
+					offsets.add((long) (FORMULA_OFFSET + out.size()));
+					ExpressionsFile.writeClauseList(out, (j == 0 ? pc.getDnf() : pc.getNegatedDnf()).getClauses());
+				}
+				pcIndices[(2 * i) + j] = index;
+			}
+		}
+		offsets.add((long) (FORMULA_OFFSET + out.size()));
+		for (final int index : pcIndices) {
+			out.writeInt(index);
+		}
+		for (final long offset : offsets) {
+			out.writeLong(offset);
+		}
+		out.flush();
+
+		final ByteBuffer header = ByteBuffer.allocate(FORMULA_OFFSET);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(pcList.size());
+		header.putInt(pcList.getPCNames().size());
+		header.putInt(offsets.size() - 1);
+		header.position(FORMULA_OFFSET);
+		header.flip();
+		ExpressionsFile.writeFile(file, header, data);
+	}
+
+	/**
+	 * @return the number of presence conditions
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getPCNameCount() {
+		return pcNameCount;
+	}
+
+	/**
+	 * @return the number of distinct DNFs of all presence conditions and their
+	 *         negations
+	 */
+	public int getDnfCount() {
+		return dnfCount;
+	}
+
+	public synchronized CNF getFormula() {
+		if (formula == null) {
+			final ByteBuffer formulaBuffer = buffer.duplicate();
+			formulaBuffer.position(FORMULA_OFFSET);
+			final int variableCount = formulaBuffer.getInt();
+			final List<String> names = new ArrayList<>(variableCount);
+			for (int i = 0; i < variableCount; i++) {
+				names.add(ExpressionsFile.readUTF(formulaBuffer));
+			}
+			formula = new CNF(VariableMap.fromNames(names), ExpressionsFile.readClauseList(formulaBuffer));
+		}
+		return formula;
+	}
+
+	/**
+	 * @return the clauses of the DNF of the given presence condition
+	 */
+	public ClauseList getDnf(int index) {
+		return getStoredDnf(buffer.getInt(pcOffset + (index * 2 * Integer.BYTES)));
+	}
+
+	/**
+	 * @return the clauses of the DNF of the negation of the given presence
+	 *         condition
+	 */
+	public ClauseList getNegatedDnf(int index) {
+		return getStoredDnf(buffer.getInt(pcOffset + (((index * 2) + 1) * Integer.BYTES)));
+	}
+
+	/**
+	 * @param index the index of a distinct DNF ({@code 0} to
+	 *              {@link #getDnfCount()})
+	 */
+	public ClauseList getStoredDnf(int index) {
+		final ByteBuffer dnfBuffer = buffer.duplicate();
+		dnfBuffer.position((int) getOffset(index));
+		return ExpressionsFile.readClauseList(dnfBuffer);
+	}
+
+	private long getOffset(int index) {
+		return buffer.getLong(indexOffset + (index * Long.BYTES));
+	}
+
+}
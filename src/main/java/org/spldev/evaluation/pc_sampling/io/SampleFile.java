@@ -0,0 +1,384 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.io;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+import java.util.zip.*;
+
+import org.spldev.clauses.*;
+import org.spldev.clauses.LiteralList.*;
+
+/**
+ * Bit-packed sample file. Each configuration is stored as one bit per variable
+ * (set if the variable is selected), padded to 64-bit words. If a sample
+ * contains unassigned variables, a second bit plane marks the assigned ones.
+ * <br>
+ * Layout (big endian):
+ *
+ * <pre>
+ * magic (4 bytes) | version (int) | flags (int) | variable count (int)
+ * | configuration count (int) | system ID (int) | system iteration (int)
+ * | algorithm index (int) | algorithm iteration (int) | CRC32 of data (long)
+ * | padding (4 bytes) | data (long words)
+ * </pre>
+ *
+ * Files are read via memory mapping. The comma-separated text format can still
+ * be written with {@link #writeText(Path, List)}.
+ */
+public class SampleFile {
+
+	public static final String BINARY_EXTENSION = "bsample";
+	public static final String TEXT_EXTENSION = "sample";
+
+	private static final int MAGIC = 0x50435353; // PCSS
+	private static final int VERSION = 1;
+	private static final int FLAG_PARTIAL = 1;
+	private static final int CHECKSUM_OFFSET = 36;
+	private static final int DATA_OFFSET = 48;
+
+	private final MappedByteBuffer buffer;
+	private final int flags;
+	private final int variableCount;
+	private final int configurationCount;
+	private final int systemIteration;
+	private final int algorithmIndex;
+	private final int algorithmIteration;
+	private final long checksum;
+	private final int systemID;
+	private final int wordsPerConfiguration;
+
+	private SampleFile(MappedByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a binary sample file");
+		}
+		final int version = buffer.getInt(4);
+		if (version != VERSION) {
+			throw new IOException("Unsupported sample file version " + version);
+		}
+		flags = buffer.getInt(8);
+		variableCount = buffer.getInt(12);
+		configurationCount = buffer.getInt(16);
+		systemID = buffer.getInt(20);
+		systemIteration = buffer.getInt(24);
+		algorithmIndex = buffer.getInt(28);
+		algorithmIteration = buffer.getInt(32);
+		checksum = buffer.getLong(CHECKSUM_OFFSET);
+		wordsPerConfiguration = getWordCount(variableCount) * (isPartial() ? 2 : 1);
+		if (buffer.capacity() != (DATA_OFFSET + ((long) configurationCount * wordsPerConfiguration * Long.BYTES))) {
+			throw new IOException("Truncated sample file");
+		}
+	}
+
+	public static SampleFile read(Path file) throws IOException {
+		return read(file, true);
+	}
+
+	/**
+	 * Maps the given file into memory.
+	 *
+	 * @param verify whether to compare the stored checksum against the data
+	 */
+	public static SampleFile read(Path file, boolean verify) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			final SampleFile sample = new SampleFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			if (verify && (sample.computeChecksum() != sample.checksum)) {
+				throw new IOException("Checksum mismatch in " + file);
+			}
+			return sample;
+		}
+	}
+
+	/**
+	 * Writes the given configurations, whose literals must be in index order
+	 * ({@code 0} marks an unassigned variable).
+	 */
+	public static void write(Path file, int systemID, int systemIteration, int algorithmIndex,
+		int algorithmIteration, int variableCount, List<? extends LiteralList> configurations) throws IOException {
+		final boolean partial = configurations.stream()
+			.anyMatch(configuration -> IntStream.of(configuration.getLiterals()).anyMatch(l -> l == 0)
+				|| (configuration.size() < variableCount));
+		final int wordCount = getWordCount(variableCount);
+		final int wordsPerConfiguration = wordCount * (partial ? 2 : 1);
+
+		final long fileSize = DATA_OFFSET + ((long) configurations.size() * wordsPerConfiguration * Long.BYTES);
+		if (fileSize > Integer.MAX_VALUE) {
+			throw new IOException("Sample of " + configurations.size() + " configurations with " + variableCount
+				+ " variables exceeds the maximum size of a binary sample file");
+		}
+		final ByteBuffer buffer = ByteBuffer.allocate((int) fileSize);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(partial ? FLAG_PARTIAL : 0);
+		buffer.putInt(variableCount);
+		buffer.putInt(configurations.size());
+		buffer.putInt(systemID);
+		buffer.putInt(systemIteration);
+		buffer.putInt(algorithmIndex);
+		buffer.putInt(algorithmIteration);
+		buffer.position(DATA_OFFSET);
+
+		final long[] words = new long[wordsPerConfiguration];
+		for (final LiteralList configuration : configurations) {
+			Arrays.fill(words, 0);
+			for (final int literal : configuration.getLiterals()) {
+				if (literal != 0) {
+					final int index = Math.abs(literal) - 1;
+					if (literal > 0) {
+						words[index >>> 6] |= 1L << index;
+					}
+					if (partial) {
+						words[wordCount + (index >>> 6)] |= 1L << index;
+					}
+				}
+			}
+			for (final long word : words) {
+				buffer.putLong(word);
+			}
+		}
+
+		final CRC32 crc = new CRC32();
+		crc.update(buffer.array(), DATA_OFFSET, buffer.capacity() - DATA_OFFSET);
+		buffer.putLong(CHECKSUM_OFFSET, crc.getValue());
+
+		buffer.flip();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Writes the given configurations as comma-separated literals, one line per
+	 * configuration.
+	 */
+	public static void writeText(Path file, List<? extends LiteralList> configurations) throws IOException {
+		Files.write(file, configurations.stream().map(SampleFile::toString).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Reads a sample in either the binary or the text format.
+	 */
+	public static List<LiteralList> readConfigurations(Path file) throws IOException {
+		return readConfigurations(file, 0);
+	}
+
+	/**
+	 * Reads a sample in either the binary or the text format.
+	 *
+	 * @param variableCount the number of variables of the model, used to size the
+	 *                      buffers (may be 0, if unknown)
+	 */
+	public static List<LiteralList> readConfigurations(Path file, int variableCount) throws IOException {
+		final List<LiteralList> configurations = new ArrayList<>();
+		forEachConfiguration(file, variableCount, (literals, length) -> configurations
+			.add(new LiteralList(Arrays.copyOf(literals, length), Order.INDEX, false)));
+		return configurations;
+	}
+
+	/**
+	 * Receives the configurations of a sample one by one. The given array is
+	 * reused for the next configuration and must not be stored.
+	 */
+	@FunctionalInterface
+	public interface ConfigurationConsumer {
+
+		void accept(int[] literals, int length);
+
+	}
+
+	/**
+	 * Streams the configurations of a sample in either the binary or the text
+	 * format to the given consumer.
+	 *
+	 * @param variableCount the number of variables of the model, used to size the
+	 *                      buffers (may be 0, if unknown)
+	 */
+	public static void forEachConfiguration(Path file, int variableCount, ConfigurationConsumer consumer)
+		throws IOException {
+		if (file.getFileName().toString().endsWith("." + BINARY_EXTENSION)) {
+			final SampleFile sample = read(file);
+			final int[] literals = new int[sample.getVariableCount()];
+			for (int i = 0; i < sample.getConfigurationCount(); i++) {
+				sample.getLiterals(i, literals);
+				consumer.accept(literals, literals.length);
+			}
+		} else {
+			TextSampleReader.read(file, variableCount, consumer);
+		}
+	}
+
+	/**
+	 * Accepts binary sample files and text sample files without a binary
+	 * counterpart.
+	 */
+	public static boolean isSampleFile(Path file) {
+		final String fileName = file.getFileName().toString();
+		if (fileName.endsWith("." + BINARY_EXTENSION)) {
+			return true;
+		} else if (fileName.endsWith("." + TEXT_EXTENSION)) {
+			return !Files.exists(file.resolveSibling(getRunName(file) + "." + BINARY_EXTENSION));
+		}
+		return false;
+	}
+
+	/**
+	 * @return the file name without extension
+	 */
+	public static String getRunName(Path file) {
+		final String fileName = file.getFileName().toString();
+		return fileName.substring(0, fileName.lastIndexOf('.'));
+	}
+
+	private static int getWordCount(int variableCount) {
+		return (variableCount + (Long.SIZE - 1)) / Long.SIZE;
+	}
+
+	private long computeChecksum() {
+		final ByteBuffer data = buffer.duplicate();
+		data.position(DATA_OFFSET);
+		final CRC32 crc = new CRC32();
+		crc.update(data);
+		return crc.getValue();
+	}
+
+	private static String toString(LiteralList literalSet) {
+		final StringBuilder sb = new StringBuilder();
+		for (final int literal : literalSet.getLiterals()) {
+			sb.append(literal);
+			sb.append(',');
+		}
+		if (sb.length() > 0) {
+			sb.deleteCharAt(sb.length() - 1);
+		}
+		return sb.toString();
+	}
+
+	public boolean isPartial() {
+		return (flags & FLAG_PARTIAL) != 0;
+	}
+
+	public int getVariableCount() {
+		return variableCount;
+	}
+
+	public int getConfigurationCount() {
+		return configurationCount;
+	}
+
+	public int getSystemIteration() {
+		return systemIteration;
+	}
+
+	public int getAlgorithmIndex() {
+		return algorithmIndex;
+	}
+
+	public int getAlgorithmIteration() {
+		return algorithmIteration;
+	}
+
+	public int getSystemID() {
+		return systemID;
+	}
+
+	public long getChecksum() {
+		return checksum;
+	}
+
+	/**
+	 * @return the number of 64-bit words that store the selected variables of a
+	 *         configuration
+	 */
+	public int getWordCount() {
+		return getWordCount(variableCount);
+	}
+
+	/**
+	 * @return the word of the selection bit plane of a configuration that
+	 *         contains the bits of the variables {@code 64 * word + 1} to
+	 *         {@code 64 * word + 64}
+	 */
+	public long getWord(int configuration, int word) {
+		return buffer.getLong(DATA_OFFSET + (((configuration * wordsPerConfiguration) + word) * Long.BYTES));
+	}
+
+	public boolean isSelected(int configuration, int variable) {
+		final int index = variable - 1;
+		return (getWord(configuration, index >>> 6) & (1L << index)) != 0;
+	}
+
+	public boolean isAssigned(int configuration, int variable) {
+		if (!isPartial()) {
+			return true;
+		}
+		final int index = variable - 1;
+		return (getWord(configuration, getWordCount() + (index >>> 6)) & (1L << index)) != 0;
+	}
+
+	/**
+	 * @return the literals of a configuration in index order
+	 */
+	public int[] getLiterals(int configuration) {
+		final int[] literals = new int[variableCount];
+		getLiterals(configuration, literals);
+		return literals;
+	}
+
+	/**
+	 * Writes the literals of a configuration in index order into the given array.
+	 */
+	public void getLiterals(int configuration, int[] literals) {
+		final int wordCount = getWordCount();
+		for (int word = 0; word < wordCount; word++) {
+			final long selected = getWord(configuration, word);
+			final long assigned = isPartial() ? getWord(configuration, wordCount + word) : -1L;
+			final int offset = word * Long.SIZE;
+			final int end = Math.min(Long.SIZE, variableCount - offset);
+			for (int bit = 0; bit < end; bit++) {
+				final int variable = offset + bit + 1;
+				if ((assigned & (1L << bit)) == 0) {
+					literals[variable - 1] = 0;
+				} else {
+					literals[variable - 1] = (selected & (1L << bit)) != 0 ? variable : -variable;
+				}
+			}
+		}
+	}
+
+	public List<LiteralList> getConfigurations() {
+		final List<LiteralList> configurations = new ArrayList<>(configurationCount);
+		for (int i = 0; i < configurationCount; i++) {
+			configurations.add(new LiteralList(getLiterals(i), Order.INDEX, false));
+		}
+		return configurations;
+	}
+
+}
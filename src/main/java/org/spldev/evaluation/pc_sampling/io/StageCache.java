@@ -0,0 +1,215 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.io;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+import org.spldev.clauses.*;
+
+/**
+ * Content hash of the inputs of a pipeline stage (extract, convert, group). The
+ * hash is stored next to the stage's outputs, so the stage can be skipped if it
+ * is run again with the same inputs. Stages can include the hash of their
+ * upstream stage, which chains the hashes through the pipeline.
+ */
+public class StageCache {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Path hashFile;
+	private final MessageDigest digest;
+	private String hash;
+
+	public StageCache(Path directory, String stage) {
+		this(stage, getHashFile(directory, stage));
+	}
+
+	private StageCache(String stage, Path hashFile) {
+		this.hashFile = hashFile;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		addString(stage);
+	}
+
+	/**
+	 * @return the content hash of the given formula, independent of any stage
+	 */
+	public static String hash(CNF cnf) {
+		return new StageCache("cnf", null).addCNF(cnf).getHash();
+	}
+
+	private static Path getHashFile(Path directory, String stage) {
+		return directory.resolve("." + stage + ".hash");
+	}
+
+	public StageCache addString(String value) {
+		final byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+		addInt(bytes.length);
+		digest.update(bytes);
+		return this;
+	}
+
+	private void addInt(int value) {
+		digest.update(new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8),
+			(byte) value });
+	}
+
+	/**
+	 * Adds the variable names and clauses of the given formula.
+	 */
+	public StageCache addCNF(CNF cnf) {
+		if (cnf == null) {
+			return addString("-");
+		}
+		final List<String> names = cnf.getVariableMap().getNames();
+		addInt(names.size());
+		for (final String name : names) {
+			addString(name);
+		}
+		final ClauseList clauses = cnf.getClauses();
+		addInt(clauses.size());
+		for (final LiteralList clause : clauses) {
+			final int[] literals = clause.getLiterals();
+			addInt(literals.length);
+			for (final int literal : literals) {
+				addInt(literal);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Adds the content of the given file. A missing file is hashed as a marker.
+	 */
+	public StageCache addFile(Path file) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			return addString("-");
+		}
+		addString(file.getFileName().toString());
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream in = Files.newInputStream(file)) {
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, count);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Adds the content of all files in the given directory (not recursive) that
+	 * match the given filter, in the order of their names.
+	 */
+	public StageCache addFiles(Path directory, Predicate<Path> filter) throws IOException {
+		if (Files.isDirectory(directory)) {
+			for (final Path file : list(Files.list(directory), filter)) {
+				addFile(file);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Adds a manifest of all files in the given tree that match the given filter,
+	 * consisting of the relative path, size, and modification time of each file.
+	 * The content is not read, as source trees can be large.
+	 */
+	public StageCache addTree(Path root, Predicate<Path> filter) throws IOException {
+		if (!Files.isDirectory(root)) {
+			return addString("-");
+		}
+		for (final Path file : list(Files.walk(root), filter)) {
+			addString(root.relativize(file).toString());
+			addString(Long.toString(Files.size(file)));
+			addString(Long.toString(Files.getLastModifiedTime(file).toMillis()));
+		}
+		return this;
+	}
+
+	/**
+	 * Adds the stored hash of an upstream stage.
+	 */
+	public StageCache addStage(Path directory, String stage) throws IOException {
+		return addString(readHash(getHashFile(directory, stage)));
+	}
+
+	private static List<Path> list(Stream<Path> files, Predicate<Path> filter) {
+		try (Stream<Path> fileStream = files) {
+			return fileStream.filter(Files::isRegularFile).filter(filter).sorted().collect(Collectors.toList());
+		}
+	}
+
+	public String getHash() {
+		if (hash == null) {
+			final StringBuilder sb = new StringBuilder();
+			for (final byte b : digest.digest()) {
+				sb.append(String.format("%02x", b));
+			}
+			hash = sb.toString();
+		}
+		return hash;
+	}
+
+	/**
+	 * @return whether the stored hash equals the current hash and all given
+	 *         outputs exist
+	 */
+	public boolean isHit(Path... outputs) throws IOException {
+		for (final Path output : outputs) {
+			if (!Files.exists(output)) {
+				return false;
+			}
+		}
+		return getHash().equals(readHash(hashFile));
+	}
+
+	/**
+	 * Stores the current hash, after the stage completed successfully.
+	 */
+	public void store() throws IOException {
+		Files.createDirectories(hashFile.getParent());
+		Files.write(hashFile, getHash().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Removes the stored hash, before the stage overwrites its outputs.
+	 */
+	public void invalidate() throws IOException {
+		Files.deleteIfExists(hashFile);
+	}
+
+	private static String readHash(Path hashFile) throws IOException {
+		return Files.isRegularFile(hashFile) ? new String(Files.readAllBytes(hashFile), StandardCharsets.UTF_8).trim()
+			: "-";
+	}
+
+}
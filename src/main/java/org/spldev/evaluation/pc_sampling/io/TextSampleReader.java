@@ -0,0 +1,118 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.io;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.spldev.evaluation.pc_sampling.io.SampleFile.*;
+
+/**
+ * Parses comma-separated sample files byte by byte into a reused literal
+ * buffer, without creating intermediate strings.
+ */
+final class TextSampleReader {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final ConfigurationConsumer consumer;
+	private int[] literals;
+	private int length = 0;
+	private int value = 0;
+	private boolean negative = false;
+	private boolean inNumber = false;
+
+	private TextSampleReader(int variableCount, ConfigurationConsumer consumer) {
+		this.consumer = consumer;
+		literals = new int[Math.max(variableCount, 16)];
+	}
+
+	static void read(Path file, int variableCount, ConfigurationConsumer consumer) throws IOException {
+		final TextSampleReader reader = new TextSampleReader(variableCount, consumer);
+		final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		final byte[] bytes = buffer.array();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			int count;
+			while ((count = channel.read(buffer)) != -1) {
+				for (int i = 0; i < count; i++) {
+					reader.parse(bytes[i]);
+				}
+				buffer.clear();
+			}
+		}
+		reader.endLine();
+	}
+
+	private void parse(byte b) throws IOException {
+		if ((b >= '0') && (b <= '9')) {
+			value = (value * 10) + (b - '0');
+			inNumber = true;
+		} else {
+			switch (b) {
+			case ',':
+			case ' ':
+			case '\t':
+			case '\r':
+				endNumber();
+				break;
+			case '\n':
+				endLine();
+				break;
+			case '-':
+				if (inNumber || negative) {
+					throw new IOException("Unexpected '-' in sample file");
+				}
+				negative = true;
+				break;
+			default:
+				throw new IOException("Unexpected character '" + (char) b + "' in sample file");
+			}
+		}
+	}
+
+	private void endNumber() throws IOException {
+		if (inNumber) {
+			if (length == literals.length) {
+				literals = Arrays.copyOf(literals, length << 1);
+			}
+			literals[length++] = negative ? -value : value;
+			value = 0;
+			negative = false;
+			inNumber = false;
+		} else if (negative) {
+			throw new IOException("Unexpected '-' in sample file");
+		}
+	}
+
+	private void endLine() throws IOException {
+		endNumber();
+		if (length > 0) {
+			consumer.accept(literals, length);
+			length = 0;
+		}
+	}
+
+}
@@ -0,0 +1,235 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.util.*;
+
+import org.spldev.evaluation.process.*;
+
+/**
+ * A single execution of an algorithm within a system iteration.
+ *
+ * @param <R> the result type of the algorithm
+ */
+public class AlgorithmRun<R> {
+
+	private final int systemIndex;
+	private final int systemIteration;
+	private final int algorithmIndex;
+	private final int algorithmIteration;
+	private final Algorithm<R> algorithm;
+
+	private Result<R> result;
+	private int resultSize = -1;
+	private long startupTime = -1;
+	private long algorithmTime = -1;
+	private long parseTime = -1;
+	private List<String> data;
+	private long budget = -1;
+	private boolean predictedTimeout;
+	private long peakRSS = -1;
+	private long userTime = -1;
+	private long systemTime = -1;
+	private long gcTime = -1;
+
+	public AlgorithmRun(int systemIndex, int systemIteration, int algorithmIndex, int algorithmIteration,
+		Algorithm<R> algorithm) {
+		this.systemIndex = systemIndex;
+		this.systemIteration = systemIteration;
+		this.algorithmIndex = algorithmIndex;
+		this.algorithmIteration = algorithmIteration;
+		this.algorithm = algorithm;
+	}
+
+	public int getSystemIndex() {
+		return systemIndex;
+	}
+
+	public int getSystemIteration() {
+		return systemIteration;
+	}
+
+	public int getAlgorithmIndex() {
+		return algorithmIndex;
+	}
+
+	public int getAlgorithmIteration() {
+		return algorithmIteration;
+	}
+
+	public Algorithm<R> getAlgorithm() {
+		return algorithm;
+	}
+
+	public Result<R> getResult() {
+		return result;
+	}
+
+	public void setResult(Result<R> result) {
+		this.result = result;
+	}
+
+	/**
+	 * @return the number of elements in the result or -1, if there is no result.
+	 *         Is kept after the result itself has been released.
+	 */
+	public int getResultSize() {
+		return resultSize;
+	}
+
+	public void setResultSize(int resultSize) {
+		this.resultSize = resultSize;
+	}
+
+	/**
+	 * @return the part of the measured time in ms that was spent for starting a
+	 *         JVM or -1, if unknown.
+	 */
+	public long getStartupTime() {
+		return startupTime;
+	}
+
+	public void setStartupTime(long startupTime) {
+		this.startupTime = startupTime;
+	}
+
+	/**
+	 * @return the part of the measured time in ms that was spent within the
+	 *         algorithm itself or -1, if unknown.
+	 */
+	public long getAlgorithmTime() {
+		return algorithmTime;
+	}
+
+	public void setAlgorithmTime(long algorithmTime) {
+		this.algorithmTime = algorithmTime;
+	}
+
+	/**
+	 * @return the time in ns that was spent for parsing the result or -1, if
+	 *         unknown.
+	 */
+	public long getParseTime() {
+		return parseTime;
+	}
+
+	public void setParseTime(long parseTime) {
+		this.parseTime = parseTime;
+	}
+
+	/**
+	 * @return the timeout in ms the run was started with or -1, if it was not
+	 *         started
+	 */
+	public long getBudget() {
+		return budget;
+	}
+
+	public void setBudget(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * @return whether the run was predicted to time out and was stopped at its
+	 *         reduced budget
+	 */
+	public boolean isPredictedTimeout() {
+		return predictedTimeout;
+	}
+
+	public void setPredictedTimeout(boolean predictedTimeout) {
+		this.predictedTimeout = predictedTimeout;
+	}
+
+	/**
+	 * @return the maximum resident set size of the processes of the run in MB or
+	 *         -1, if not measured.
+	 * @see ResourceMonitor
+	 */
+	public long getPeakRSS() {
+		return peakRSS;
+	}
+
+	public void setPeakRSS(long peakRSS) {
+		this.peakRSS = peakRSS;
+	}
+
+	/**
+	 * @return the CPU time in ms that the processes of the run spent in user mode
+	 *         or -1, if not measured.
+	 */
+	public long getUserTime() {
+		return userTime;
+	}
+
+	public void setUserTime(long userTime) {
+		this.userTime = userTime;
+	}
+
+	/**
+	 * @return the CPU time in ms that the processes of the run spent in kernel
+	 *         mode or -1, if not measured.
+	 */
+	public long getSystemTime() {
+		return systemTime;
+	}
+
+	public void setSystemTime(long systemTime) {
+		this.systemTime = systemTime;
+	}
+
+	/**
+	 * @return the total GC pause time in ms of the run or -1, if unknown.
+	 */
+	public long getGCTime() {
+		return gcTime;
+	}
+
+	public void setGCTime(long gcTime) {
+		this.gcTime = gcTime;
+	}
+
+	/**
+	 * Sets the resource usage of the run from the given measurement.
+	 */
+	public void setResourceUsage(ResourceMonitor.Measurement measurement) {
+		if (measurement != null) {
+			measurement.stop();
+			peakRSS = measurement.getPeakRSS();
+			userTime = measurement.getUserTime();
+			systemTime = measurement.getSystemTime();
+		}
+	}
+
+	/**
+	 * @return the values of the data row of this run
+	 */
+	public List<String> getData() {
+		return data;
+	}
+
+	public void setData(List<String> data) {
+		this.data = data;
+	}
+
+}
@@ -0,0 +1,248 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+/**
+ * Runs the sampling algorithms of the FIDE tool within the current JVM. The
+ * tool is loaded in its own class loader, such that its classes do not
+ * interfere with the classes of this program. Models and expressions are
+ * passed as plain literal arrays, which avoids any file system access.
+ */
+public class FIDEToolBridge {
+
+	public static final Path DEFAULT_TOOL_PATH = Paths.get("resources/tools/FIDE");
+
+	private static final String VARIABLE_MAP = "org.spldev.formula.VariableMap";
+	private static final String LITERAL_LIST = "org.spldev.formula.clause.LiteralList";
+	private static final String CLAUSE_LIST = "org.spldev.formula.clause.ClauseList";
+	private static final String CNF = "org.spldev.formula.clause.CNF";
+	private static final String ABSTRACT_ANALYSIS = "org.spldev.formula.clause.analysis.AbstractAnalysis";
+	private static final String NULL_MONITOR = "org.spldev.util.job.NullMonitor";
+	private static final String TWISE_GENERATOR = "org.spldev.formula.clause.configuration.twise.TWiseConfigurationGenerator";
+	private static final String RANDOM_GENERATOR = "org.spldev.formula.clause.configuration.RandomConfigurationGenerator";
+	private static final String PAIRWISE_GENERATOR = "org.spldev.formula.clause.configuration.PairWiseConfigurationGenerator";
+
+	private static FIDEToolBridge defaultBridge;
+
+	public static synchronized FIDEToolBridge getDefault() throws IOException, ReflectiveOperationException {
+		if (defaultBridge == null) {
+			defaultBridge = new FIDEToolBridge(DEFAULT_TOOL_PATH);
+		}
+		return defaultBridge;
+	}
+
+	/**
+	 * Parameters of a single sampling call. Mirrors the arguments of the tool's
+	 * {@code genconfig} command.
+	 */
+	public static class SampleRequest {
+
+		private final String algorithm;
+		private Integer t;
+		private Integer m;
+		private Integer limit;
+		private Long seed;
+		private List<List<List<int[]>>> expressions;
+
+		public SampleRequest(String algorithm) {
+			this.algorithm = algorithm;
+		}
+
+		public String getAlgorithm() {
+			return algorithm;
+		}
+
+		public void setT(Integer t) {
+			this.t = t;
+		}
+
+		public void setM(Integer m) {
+			this.m = m;
+		}
+
+		public void setLimit(Integer limit) {
+			this.limit = limit;
+		}
+
+		public void setSeed(Long seed) {
+			this.seed = seed;
+		}
+
+		/**
+		 * @param expressions groups of expressions, each expression is a list of
+		 *                    clauses
+		 */
+		public void setExpressions(List<List<List<int[]>>> expressions) {
+			this.expressions = expressions;
+		}
+
+	}
+
+	private final Class<?> twiseGeneratorClass;
+	private final Class<?> randomGeneratorClass;
+	private final Class<?> pairwiseGeneratorClass;
+	private final Constructor<?> variableMapConstructor;
+	private final Constructor<?> literalListConstructor;
+	private final Constructor<?> clauseListConstructor;
+	private final Constructor<?> cnfConstructor;
+	private final Constructor<?> monitorConstructor;
+	private final Method executeMethod;
+	private final Method setRandomMethod;
+	private final Method getLiteralsMethod;
+
+	public FIDEToolBridge(Path toolPath) throws IOException, ReflectiveOperationException {
+		final List<URL> urls;
+		try (Stream<Path> files = Files.list(toolPath)) {
+			urls = files.filter(file -> file.getFileName().toString().endsWith(".jar")).sorted().map(file -> {
+				try {
+					return file.toUri().toURL();
+				} catch (final MalformedURLException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).collect(Collectors.toList());
+		}
+		if (urls.isEmpty()) {
+			throw new FileNotFoundException("No jar files in " + toolPath);
+		}
+		final ClassLoader classLoader = new URLClassLoader(urls.toArray(new URL[0]),
+			ClassLoader.getPlatformClassLoader());
+
+		final Class<?> variableMapClass = classLoader.loadClass(VARIABLE_MAP);
+		final Class<?> literalListClass = classLoader.loadClass(LITERAL_LIST);
+		final Class<?> cnfClass = classLoader.loadClass(CNF);
+		final Class<?> analysisClass = classLoader.loadClass(ABSTRACT_ANALYSIS);
+		final Class<?> monitorClass = classLoader.loadClass(NULL_MONITOR);
+		twiseGeneratorClass = classLoader.loadClass(TWISE_GENERATOR);
+		randomGeneratorClass = classLoader.loadClass(RANDOM_GENERATOR);
+		pairwiseGeneratorClass = classLoader.loadClass(PAIRWISE_GENERATOR);
+
+		variableMapConstructor = variableMapClass.getConstructor(Collection.class);
+		literalListConstructor = literalListClass.getConstructor(int[].class);
+		clauseListConstructor = classLoader.loadClass(CLAUSE_LIST).getConstructor();
+		cnfConstructor = cnfClass.getConstructor(variableMapClass, List.class);
+		monitorConstructor = monitorClass.getConstructor();
+		executeMethod = analysisClass.getMethod("execute", cnfClass, monitorClass.getInterfaces()[0]);
+		setRandomMethod = analysisClass.getMethod("setRandom", Random.class);
+		getLiteralsMethod = literalListClass.getMethod("getLiterals");
+	}
+
+	/**
+	 * Computes a sample for the given model.
+	 *
+	 * @param variableNames the names of all variables, ordered by their index
+	 * @param clauses       the clauses of the model
+	 * @param request       the algorithm and its parameters
+	 * @return the configurations of the sample as literal arrays
+	 */
+	public List<int[]> sample(List<String> variableNames, List<int[]> clauses, SampleRequest request)
+		throws Exception {
+		final Object variables = variableMapConstructor.newInstance(variableNames);
+		final Object cnf = cnfConstructor.newInstance(variables, toClauseList(clauses));
+		final Object generator = createGenerator(request);
+		if (request.seed != null) {
+			setRandomMethod.invoke(generator, new Random(request.seed));
+		}
+
+		final List<?> solutions;
+		try {
+			solutions = (List<?>) executeMethod.invoke(generator, cnf, monitorConstructor.newInstance());
+		} catch (final InvocationTargetException e) {
+			throw unwrap(e);
+		}
+		if (solutions == null) {
+			throw new IllegalStateException("No sample computed by " + request.algorithm);
+		}
+		final ArrayList<int[]> configurations = new ArrayList<>(solutions.size());
+		for (final Object solution : solutions) {
+			configurations.add((int[]) getLiteralsMethod.invoke(solution));
+		}
+		return configurations;
+	}
+
+	private Object createGenerator(SampleRequest request) throws Exception {
+		final int limit = request.limit != null ? request.limit : Integer.MAX_VALUE;
+		switch (request.algorithm.toLowerCase()) {
+		case "yasa": {
+			if (request.t == null) {
+				throw new IllegalArgumentException("Value of t must be specified for yasa");
+			}
+			final Object generator;
+			if (request.expressions != null) {
+				final List<List<Object>> nodes = new ArrayList<>(request.expressions.size());
+				for (final List<List<int[]>> group : request.expressions) {
+					final List<Object> groupNodes = new ArrayList<>(group.size());
+					for (final List<int[]> expression : group) {
+						groupNodes.add(toClauseList(expression));
+					}
+					nodes.add(groupNodes);
+				}
+				generator = twiseGeneratorClass.getConstructor(List.class, int.class, int.class).newInstance(nodes,
+					request.t, limit);
+			} else {
+				generator = twiseGeneratorClass.getConstructor(int.class, int.class).newInstance(request.t, limit);
+			}
+			if (request.m != null) {
+				twiseGeneratorClass.getMethod("setIterations", int.class).invoke(generator, request.m);
+			}
+			return generator;
+		}
+		case "random": {
+			final Object generator = randomGeneratorClass.getConstructor(int.class).newInstance(limit);
+			randomGeneratorClass.getMethod("setAllowDuplicates", boolean.class).invoke(generator, true);
+			return generator;
+		}
+		case "incling": {
+			return pairwiseGeneratorClass.getConstructor(int.class).newInstance(limit);
+		}
+		default:
+			throw new IllegalArgumentException("Algorithm not supported in process: " + request.algorithm);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Object> toClauseList(List<int[]> clauses) throws ReflectiveOperationException {
+		final List<Object> clauseList = (List<Object>) clauseListConstructor.newInstance();
+		for (final int[] clause : clauses) {
+			clauseList.add(literalListConstructor.newInstance((Object) clause));
+		}
+		return clauseList;
+	}
+
+	private static Exception unwrap(InvocationTargetException e) {
+		final Throwable cause = e.getCause();
+		if (cause instanceof Exception) {
+			return (Exception) cause;
+		} else if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return e;
+	}
+
+}
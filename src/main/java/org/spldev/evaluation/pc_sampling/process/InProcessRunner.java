@@ -0,0 +1,108 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.spldev.evaluation.process.*;
+import org.spldev.util.logging.*;
+
+/**
+ * Counterpart of {@link ProcessRunner} for {@link InProcessAlgorithm
+ * algorithms} that run within the current JVM. Measures time in the same way,
+ * but cannot kill an algorithm that exceeds the timeout. The run is reported as
+ * timed out and its thread is interrupted and abandoned, but it keeps running
+ * and using CPU and heap of the evaluation JVM until the algorithm checks for
+ * the interrupt or finishes.
+ */
+public class InProcessRunner implements AutoCloseable {
+
+	private final List<Thread> abandonedThreads = new ArrayList<>();
+
+	private long timeout = Long.MAX_VALUE;
+
+	private Thread currentThread;
+	private ExecutorService executor = createExecutor();
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public <R> Result<R> run(InProcessAlgorithm<R> algorithm) {
+		abandonedThreads.removeIf(thread -> !thread.isAlive());
+		if (!abandonedThreads.isEmpty()) {
+			Logger.logInfo(abandonedThreads.size() + " timed out in-process runs are still running");
+		}
+		final Result<R> result = new Result<>();
+		final long startTime = System.nanoTime();
+		final Future<R> future = executor.submit(algorithm::execute);
+		try {
+			final R sample = future.get(timeout, TimeUnit.MILLISECONDS);
+			result.setTime((System.nanoTime() - startTime) / 1_000_000L);
+			result.setTerminatedInTime(true);
+			result.setNoError(true);
+			result.setResult(sample);
+		} catch (final TimeoutException e) {
+			// The algorithm may ignore the interrupt, so do not reuse its thread
+			future.cancel(true);
+			executor.shutdownNow();
+			abandonedThreads.add(currentThread);
+			executor = createExecutor();
+			result.setTime((System.nanoTime() - startTime) / 1_000_000L);
+			result.setTerminatedInTime(false);
+			result.setNoError(true);
+		} catch (final ExecutionException e) {
+			Logger.logError(e.getCause());
+			result.setTime((System.nanoTime() - startTime) / 1_000_000L);
+			result.setTerminatedInTime(true);
+			result.setNoError(false);
+		} catch (final InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			result.setTerminatedInTime(false);
+			result.setNoError(false);
+		}
+		Logger.logInfo("In Time: " + result.isTerminatedInTime() + ", No Error: " + result.isNoError());
+		return result;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	private ExecutorService createExecutor() {
+		return Executors.newSingleThreadExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "in-process-algorithm");
+			thread.setDaemon(true);
+			currentThread = thread;
+			return thread;
+		});
+	}
+
+}
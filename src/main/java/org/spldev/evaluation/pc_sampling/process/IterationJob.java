@@ -0,0 +1,116 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.nio.file.*;
+import java.util.*;
+
+import org.spldev.clauses.*;
+import org.spldev.evaluation.process.*;
+
+/**
+ * All runs of one system iteration. Each job owns its temporary directory, its
+ * randomized model, and its algorithm instances, such that jobs can be executed
+ * concurrently.
+ *
+ * @param <R> the result type of the algorithms
+ * @param <A> the algorithm type
+ */
+public class IterationJob<R, A extends Algorithm<R>> {
+
+	private final int systemIndex;
+	private final int systemIteration;
+	private final Path tempDir;
+
+	private final RunStatistics statistics;
+	private final List<AlgorithmRun<R>> runs = new ArrayList<>();
+
+	private final Map<String, List<List<ClauseList>>> expressions = new HashMap<>();
+
+	private CNF randomizedModel;
+	private VariablePermutation permutation;
+
+	public IterationJob(int systemIndex, int systemIteration, Path tempDir, RunStatistics statistics) {
+		this.systemIndex = systemIndex;
+		this.systemIteration = systemIteration;
+		this.tempDir = tempDir;
+		this.statistics = statistics;
+	}
+
+	public int getSystemIndex() {
+		return systemIndex;
+	}
+
+	public int getSystemIteration() {
+		return systemIteration;
+	}
+
+	public Path getTempDir() {
+		return tempDir;
+	}
+
+	public RunStatistics getStatistics() {
+		return statistics;
+	}
+
+	public CNF getRandomizedModel() {
+		return randomizedModel;
+	}
+
+	public void setRandomizedModel(CNF randomizedModel) {
+		this.randomizedModel = randomizedModel;
+	}
+
+	/**
+	 * @return the renaming from the variables of the original model to the
+	 *         variables of the randomized model
+	 */
+	public VariablePermutation getPermutation() {
+		return permutation;
+	}
+
+	public void setPermutation(VariablePermutation permutation) {
+		this.permutation = permutation;
+	}
+
+	/**
+	 * @return the randomized expression groups of the given grouping or
+	 *         {@code null}, if they were not kept in memory.
+	 */
+	public List<List<ClauseList>> getExpressions(String grouping) {
+		return expressions.get(grouping);
+	}
+
+	public void setExpressions(String grouping, List<List<ClauseList>> expressionGroups) {
+		expressions.put(grouping, expressionGroups);
+	}
+
+	public List<AlgorithmRun<R>> getRuns() {
+		return runs;
+	}
+
+	public void addRun(AlgorithmRun<R> run) {
+		runs.add(run);
+	}
+
+}
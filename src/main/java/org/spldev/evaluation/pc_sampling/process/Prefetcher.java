@@ -0,0 +1,126 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Prepares jobs in order on a background thread ahead of their execution. At
+ * most {@code capacity} jobs are prepared but not yet released, so the
+ * resources of prepared jobs (e.g., their temporary directories) are bounded.
+ *
+ * @param <J> the job type
+ * @param <T> the result type of the preparation
+ */
+public class Prefetcher<J, T> implements AutoCloseable {
+
+	@FunctionalInterface
+	public interface Preparation<J, T> {
+		T prepare(J job) throws Exception;
+	}
+
+	private final List<J> jobs;
+	private final Preparation<J, T> preparation;
+	private final Map<J, CompletableFuture<T>> results = new IdentityHashMap<>();
+	private final Semaphore slots;
+	private final Thread producer;
+
+	/**
+	 * @param jobs        the jobs in the order in which they are prepared
+	 * @param capacity    the maximum number of prepared jobs that were not
+	 *                    released
+	 * @param preparation the preparation for each job
+	 */
+	public Prefetcher(List<J> jobs, int capacity, Preparation<J, T> preparation) {
+		this.jobs = new ArrayList<>(jobs);
+		this.preparation = preparation;
+		for (final J job : jobs) {
+			results.put(job, new CompletableFuture<>());
+		}
+		slots = new Semaphore(Math.max(1, capacity));
+		producer = new Thread(this::produce, "prefetcher");
+		producer.setDaemon(true);
+		producer.start();
+	}
+
+	private void produce() {
+		for (final J job : jobs) {
+			final CompletableFuture<T> result = results.get(job);
+			try {
+				slots.acquire();
+			} catch (final InterruptedException e) {
+				return;
+			}
+			try {
+				result.complete(preparation.prepare(job));
+			} catch (final Throwable e) {
+				// Includes errors such as an OutOfMemoryError, which would leave the job
+				// waiting forever
+				result.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * Waits until the given job is prepared. Each job must be
+	 * {@link #release(Object) released} afterwards, even if this method throws an
+	 * exception.
+	 *
+	 * @return the result of the preparation
+	 * @throws Exception the exception thrown by the preparation
+	 * @throws Error     the error thrown by the preparation
+	 */
+	public T take(J job) throws Exception {
+		try {
+			return results.get(job).get();
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		} catch (final CancellationException e) {
+			throw new InterruptedException();
+		}
+	}
+
+	/**
+	 * Frees the slot of the given job, allowing the next job to be prepared.
+	 */
+	public void release(J job) {
+		slots.release();
+	}
+
+	@Override
+	public void close() {
+		producer.interrupt();
+		for (final CompletableFuture<T> result : results.values()) {
+			result.cancel(false);
+		}
+	}
+
+}
@@ -0,0 +1,332 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.*;
+
+/**
+ * Samples the resource usage of child processes from {@code /proc}. All values
+ * are taken from the last sample while a process was still alive, because the
+ * process runner reaps a process before its measurement is stopped. Peak RSS is
+ * taken from the high water mark of the kernel, so it includes peaks between
+ * two samples, but CPU times and peak RSS miss any growth after the last sample,
+ * which is at most one sampling interval before the process exits. The first
+ * interval of a measurement is sampled more densely, so that short runs are
+ * observed as well.
+ */
+public class ResourceMonitor implements AutoCloseable {
+
+	// USER_HZ, the unit of the CPU times in /proc/<pid>/stat
+	private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+	private static final Path PROC = Paths.get("/proc");
+	private static final Pattern GC_PAUSE = Pattern.compile("Pause.*?(\\d+(?:\\.\\d+)?)ms\\s*$");
+
+	/**
+	 * Resource usage of the processes that belong to one run.
+	 */
+	public class Measurement {
+
+		private final String directory;
+		private final long pid;
+
+		// Per process: user ticks, system ticks, peak RSS in kB
+		private final Map<Long, long[]> usage = new HashMap<>();
+		private final Map<Long, long[]> baseline = new HashMap<>();
+		private final Set<Long> unrelated = new HashSet<>();
+
+		private Measurement(String directory, long pid) {
+			this.directory = directory;
+			this.pid = pid;
+		}
+
+		private synchronized void sample() {
+			if (pid >= 0) {
+				update(pid);
+			} else {
+				ProcessHandle.current().descendants().forEach(process -> {
+					final long childPid = process.pid();
+					if (usage.containsKey(childPid)) {
+						update(childPid);
+					} else if (!unrelated.contains(childPid)) {
+						if (referencesDirectory(readCommandLine(childPid), directory)) {
+							update(childPid);
+						} else {
+							unrelated.add(childPid);
+						}
+					}
+				});
+			}
+		}
+
+		private void update(long processID) {
+			final long[] values = readUsage(processID);
+			if (values != null) {
+				final long[] previous = usage.get(processID);
+				if (previous != null) {
+					values[2] = Math.max(values[2], previous[2]);
+				}
+				usage.put(processID, values);
+			}
+		}
+
+		/**
+		 * Stops sampling and takes a final sample of processes that are still alive
+		 * (e.g., a long-lived worker).
+		 */
+		public void stop() {
+			measurements.remove(this);
+			sample();
+		}
+
+		/**
+		 * @return the maximum resident set size of a process of the run in MB or -1,
+		 *         if no process was observed
+		 */
+		public synchronized long getPeakRSS() {
+			long peak = -1;
+			for (final long[] values : usage.values()) {
+				peak = Math.max(peak, values[2] / 1024);
+			}
+			return peak;
+		}
+
+		/**
+		 * @return the CPU time spent in user mode by all processes of the run in ms
+		 *         or -1, if no process was observed
+		 */
+		public synchronized long getUserTime() {
+			return getCPUTime(0);
+		}
+
+		/**
+		 * @return the CPU time spent in kernel mode by all processes of the run in ms
+		 *         or -1, if no process was observed
+		 */
+		public synchronized long getSystemTime() {
+			return getCPUTime(1);
+		}
+
+		private long getCPUTime(int index) {
+			if (usage.isEmpty()) {
+				return -1;
+			}
+			long ticks = 0;
+			for (final Map.Entry<Long, long[]> entry : usage.entrySet()) {
+				final long[] base = baseline.get(entry.getKey());
+				ticks += entry.getValue()[index] - (base != null ? base[index] : 0);
+			}
+			return (ticks * 1000) / CLOCK_TICKS_PER_SECOND;
+		}
+	}
+
+	private final Set<Measurement> measurements = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService sampler;
+	private final long interval;
+
+	/**
+	 * @param interval the sampling interval in ms (0 disables the monitor)
+	 */
+	public ResourceMonitor(long interval) {
+		this.interval = interval;
+		if ((interval > 0) && Files.isDirectory(PROC.resolve("self"))) {
+			sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				final Thread thread = new Thread(runnable, "resource-monitor");
+				thread.setDaemon(true);
+				return thread;
+			});
+			sampler.scheduleWithFixedDelay(() -> {
+				for (final Measurement measurement : measurements) {
+					measurement.sample();
+				}
+			}, interval, interval, TimeUnit.MILLISECONDS);
+		} else {
+			sampler = null;
+		}
+	}
+
+	public boolean isEnabled() {
+		return sampler != null;
+	}
+
+	/**
+	 * Starts measuring all descendant processes that have an argument referring to
+	 * the given directory or a file within it (e.g., the temporary directory of a
+	 * job).
+	 *
+	 * @return the measurement or {@code null}, if the monitor is disabled
+	 */
+	public Measurement start(Path directory) {
+		if (sampler == null) {
+			return null;
+		}
+		final Measurement measurement = new Measurement(directory.toString(), -1);
+		measurements.add(measurement);
+		// The processes of a run that is shorter than the interval would otherwise
+		// never be sampled
+		for (long delay = 1; delay < interval; delay *= 2) {
+			sampler.schedule(() -> {
+				if (measurements.contains(measurement)) {
+					measurement.sample();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		return measurement;
+	}
+
+	/**
+	 * Starts measuring the given long-lived process. Its CPU times are counted from
+	 * now on and its peak RSS is reset.
+	 *
+	 * @return the measurement or {@code null}, if the monitor is disabled
+	 */
+	public Measurement start(long pid) {
+		if (sampler == null) {
+			return null;
+		}
+		final Measurement measurement = new Measurement(null, pid);
+		try {
+			// Reset the high water mark of the resident set size
+			Files.write(PROC.resolve(Long.toString(pid)).resolve("clear_refs"),
+				"5".getBytes(StandardCharsets.US_ASCII));
+		} catch (final IOException e) {
+		}
+		final long[] values = readUsage(pid);
+		if (values != null) {
+			measurement.baseline.put(pid, values);
+		}
+		measurements.add(measurement);
+		return measurement;
+	}
+
+	/**
+	 * Checks whether an argument of the given command line is the given directory
+	 * or a path within it. Paths may also appear as values of options (e.g.,
+	 * {@code -Xlog:gc:file=<path>}) or within class paths. A directory is never
+	 * matched by a sibling that merely starts with its name (e.g., {@code job_1}
+	 * and {@code job_10}).
+	 */
+	static boolean referencesDirectory(String commandLine, String directory) {
+		final String prefix = directory + File.separator;
+		for (final String argument : commandLine.split("\0")) {
+			if (argument.equals(directory)) {
+				return true;
+			}
+			for (int index = argument.indexOf(prefix); index >= 0; index = argument.indexOf(prefix, index + 1)) {
+				if (index == 0) {
+					return true;
+				}
+				final char previous = argument.charAt(index - 1);
+				if ((previous == '=') || (previous == ':') || (previous == File.pathSeparatorChar)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static String readCommandLine(long pid) {
+		try {
+			return new String(Files.readAllBytes(PROC.resolve(Long.toString(pid)).resolve("cmdline")),
+				StandardCharsets.UTF_8);
+		} catch (final IOException e) {
+			return "";
+		}
+	}
+
+	/**
+	 * @return user ticks, system ticks, and peak RSS in kB of the given process or
+	 *         {@code null}, if the process does not exist anymore
+	 */
+	private static long[] readUsage(long pid) {
+		try {
+			final Path processDir = PROC.resolve(Long.toString(pid));
+			final String stat = new String(Files.readAllBytes(processDir.resolve("stat")), StandardCharsets.UTF_8);
+			// The command name in parentheses may contain spaces
+			final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+			final long userTicks = Long.parseLong(fields[11]);
+			final long systemTicks = Long.parseLong(fields[12]);
+			long peakRSS = 0;
+			for (final String line : Files.readAllLines(processDir.resolve("status"), StandardCharsets.UTF_8)) {
+				if (line.startsWith("VmHWM:")) {
+					peakRSS = Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+					break;
+				}
+			}
+			return new long[] { userTicks, systemTicks, peakRSS };
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the JVM option that writes GC events to the given file
+	 */
+	public static String getGCLogOption(Path gcLogFile) {
+		return "-Xlog:gc:file=" + gcLogFile;
+	}
+
+	public static boolean isGCLogOption(String jvmOption) {
+		return jvmOption.startsWith("-Xlog:gc:file=");
+	}
+
+	/**
+	 * @return the total pause time in ms of all GC events in the given log
+	 */
+	public static long parseGCPauseTime(String log) {
+		double pauseTime = 0;
+		for (final String line : log.split("\n")) {
+			final Matcher matcher = GC_PAUSE.matcher(line);
+			if (matcher.find()) {
+				pauseTime += Double.parseDouble(matcher.group(1));
+			}
+		}
+		return Math.round(pauseTime);
+	}
+
+	/**
+	 * @return the total pause time in ms of all GC events in the given log file or
+	 *         -1, if there is no such file
+	 */
+	public static long readGCPauseTime(Path gcLogFile) {
+		try {
+			return parseGCPauseTime(new String(Files.readAllBytes(gcLogFile), StandardCharsets.UTF_8));
+		} catch (final IOException e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public void close() {
+		if (sampler != null) {
+			sampler.shutdownNow();
+		}
+		measurements.clear();
+	}
+
+}
@@ -0,0 +1,170 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.spldev.util.logging.*;
+
+/**
+ * Times of all completed runs across evaluations, used to predict whether a
+ * run will time out. Each record holds the system name, the full algorithm name
+ * (including its parameters), the size of the model, the time, whether the run
+ * finished in time, and the timeout it ran with. The history is appended to a
+ * file and never reset.
+ */
+public class RunHistory implements AutoCloseable {
+
+	private static final class Record {
+		private final String systemName;
+		private final String algorithm;
+		private final int variables;
+		private final int clauses;
+		private final long time;
+		private final boolean inTime;
+		private final long timeout;
+
+		private Record(String systemName, String algorithm, int variables, int clauses, long time, boolean inTime,
+			long timeout) {
+			this.systemName = systemName;
+			this.algorithm = algorithm;
+			this.variables = variables;
+			this.clauses = clauses;
+			this.time = time;
+			this.inTime = inTime;
+			this.timeout = timeout;
+		}
+	}
+
+	private final List<Record> records = new ArrayList<>();
+	private final Writer writer;
+
+	public RunHistory(Path file) throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		boolean completeLastLine = true;
+		if (Files.isRegularFile(file)) {
+			final String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			for (final String line : content.split("\n")) {
+				readLine(line);
+			}
+			completeLastLine = content.isEmpty() || content.endsWith("\n");
+		}
+		writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+			StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+		if (!completeLastLine) {
+			writer.write('\n');
+			writer.flush();
+		}
+	}
+
+	private void readLine(String line) {
+		final String[] values = line.split("\t");
+		if ((values.length == 6) || (values.length == 7)) {
+			try {
+				final long time = Long.parseLong(values[4]);
+				// Older records were keyed by the row of the system in models.txt, which is not
+				// stable across experiments, and lack the timeout, of which their time is a lower
+				// bound
+				final boolean legacy = values.length == 6;
+				records.add(new Record(legacy ? null : values[0], values[1], Integer.parseInt(values[2]),
+					Integer.parseInt(values[3]), time, Boolean.parseBoolean(values[5]),
+					legacy ? time : Long.parseLong(values[6])));
+			} catch (final NumberFormatException e) {
+				Logger.logDebug("Skipping malformed history line");
+			}
+		}
+	}
+
+	/**
+	 * @param timeout the timeout the run was executed with
+	 */
+	public synchronized void add(String systemName, String algorithm, int variables, int clauses, long time,
+		boolean inTime, long timeout) throws IOException {
+		records.add(new Record(systemName, algorithm, variables, clauses, time, inTime, timeout));
+		writer.write(systemName + "\t" + algorithm + "\t" + variables + "\t" + clauses + "\t" + time + "\t"
+			+ inTime + "\t" + timeout + "\n");
+		writer.flush();
+	}
+
+	/**
+	 * Predicts whether a run times out. Uses the previous runs of the algorithm on
+	 * the same system or, if there are not enough of them, the previous runs of the
+	 * algorithm on models that are at most as large, assuming that a larger model
+	 * takes at least as long. A run is considered hopeless, if the given quantile
+	 * of the times of these runs exceeds the timeout. A previous run exceeds the
+	 * timeout if it took at least as long or if it timed out with a timeout that
+	 * was at least as long. Runs that timed out with a shorter timeout are
+	 * ignored, as they do not show whether the run finishes within the timeout.
+	 *
+	 * @param quantile   the quantile in [0, 1]. The lower, the more runs must
+	 *                   have timed out.
+	 * @param minHistory the minimum number of previous runs needed for a
+	 *                   prediction
+	 */
+	public synchronized boolean isHopeless(String systemName, String algorithm, int variables, int clauses,
+		long timeout, double quantile, int minHistory) {
+		final List<Long> sameSystem = new ArrayList<>();
+		final List<Long> smallerSystems = new ArrayList<>();
+		for (final Record record : records) {
+			if (record.algorithm.equals(algorithm)) {
+				final long time;
+				if (record.time >= timeout) {
+					time = Long.MAX_VALUE;
+				} else if (record.inTime) {
+					time = record.time;
+				} else if (record.timeout >= timeout) {
+					time = Long.MAX_VALUE;
+				} else {
+					continue;
+				}
+				if (systemName.equals(record.systemName)) {
+					sameSystem.add(time);
+				} else if ((record.variables <= variables) && (record.clauses <= clauses)) {
+					smallerSystems.add(time);
+				}
+			}
+		}
+		if (sameSystem.size() >= minHistory) {
+			return getQuantile(sameSystem, quantile) == Long.MAX_VALUE;
+		} else if (smallerSystems.size() >= minHistory) {
+			return getQuantile(smallerSystems, quantile) == Long.MAX_VALUE;
+		} else {
+			return false;
+		}
+	}
+
+	private static long getQuantile(List<Long> times, double quantile) {
+		Collections.sort(times);
+		final int index = (int) Math.floor(Math.max(0, Math.min(1, quantile)) * (times.size() - 1));
+		return times.get(index);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+}
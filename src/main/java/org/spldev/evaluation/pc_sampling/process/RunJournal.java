@@ -0,0 +1,233 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.spldev.evaluation.pc_sampling.io.*;
+import org.spldev.util.logging.*;
+
+/**
+ * Append-only record of finished algorithm runs. Each line holds the key of a
+ * run (system ID, system iteration, algorithm index, algorithm iteration), the
+ * algorithm name, the values needed to restore derived state, the hash of the
+ * result file, and the data row of the run. Allows to resume an interrupted
+ * evaluation without repeating finished runs.
+ */
+public class RunJournal implements AutoCloseable {
+
+	private static final int FIXED_VALUES = 8;
+	private static final String NO_HASH = "-";
+
+	public static final class Entry {
+		private final String algorithmName;
+		private final int resultSize;
+		private final long time;
+		private final String resultHash;
+		private final List<String> data;
+
+		public Entry(String algorithmName, int resultSize, long time, String resultHash, List<String> data) {
+			this.algorithmName = algorithmName;
+			this.resultSize = resultSize;
+			this.time = time;
+			this.resultHash = resultHash;
+			this.data = data;
+		}
+
+		public String getAlgorithmName() {
+			return algorithmName;
+		}
+
+		public int getResultSize() {
+			return resultSize;
+		}
+
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * @return the hash of the result file or {@code null}, if the run did not
+		 *         write one
+		 */
+		public String getResultHash() {
+			return resultHash;
+		}
+
+		public List<String> getData() {
+			return data;
+		}
+	}
+
+	private final Map<String, Entry> entries = new HashMap<>();
+	private final Writer writer;
+
+	private RunJournal() {
+		writer = null;
+	}
+
+	/**
+	 * Reads the journal in the given file without opening it for writing.
+	 */
+	public static RunJournal read(Path file) throws IOException {
+		final RunJournal journal = new RunJournal();
+		if (Files.isRegularFile(file)) {
+			journal.readLines(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+		}
+		return journal;
+	}
+
+	/**
+	 * Opens the journal in the given file.
+	 *
+	 * @param resume whether the entries of an existing journal are kept.
+	 *               Otherwise, the journal is started anew.
+	 */
+	public RunJournal(Path file, boolean resume) throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		boolean completeLastLine = true;
+		if (resume && Files.isRegularFile(file)) {
+			final String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			readLines(content);
+			completeLastLine = content.isEmpty() || content.endsWith("\n");
+			Logger.logInfo("Resuming " + entries.size() + " finished runs");
+		}
+		writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+			resume ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		if (!completeLastLine) {
+			// Terminate a line that was cut off by an interrupted write
+			writer.write('\n');
+			writer.flush();
+		}
+	}
+
+	private void readLines(String content) {
+		for (final String line : content.split("\n")) {
+			readLine(line);
+		}
+	}
+
+	private void readLine(String line) {
+		final String[] values = line.split("\t", -1);
+		if (values.length >= FIXED_VALUES) {
+			try {
+				final String key = getKey(Integer.parseInt(values[0]), Integer.parseInt(values[1]),
+					Integer.parseInt(values[2]), Integer.parseInt(values[3]));
+				entries.put(key, new Entry(values[4], Integer.parseInt(values[5]), Long.parseLong(values[6]),
+					NO_HASH.equals(values[7]) ? null : values[7],
+					Arrays.asList(Arrays.copyOfRange(values, FIXED_VALUES, values.length))));
+			} catch (final NumberFormatException e) {
+				Logger.logDebug("Skipping malformed journal line");
+			}
+		}
+	}
+
+	private static String getKey(int systemID, int systemIteration, int algorithmIndex, int algorithmIteration) {
+		return systemID + "_" + systemIteration + "_" + algorithmIndex + "_" + algorithmIteration;
+	}
+
+	/**
+	 * @return the entry of the given run or {@code null}, if the run did not
+	 *         finish, was done by another algorithm, or its result file is missing
+	 *         or was changed
+	 */
+	public synchronized Entry get(int systemID, AlgorithmRun<?> run, Path resultFile) {
+		final Entry entry = entries.get(getKey(systemID, run.getSystemIteration(), run.getAlgorithmIndex(),
+			run.getAlgorithmIteration()));
+		if ((entry == null) || !entry.algorithmName.equals(run.getAlgorithm().getFullName())) {
+			return null;
+		}
+		if (entry.resultHash != null) {
+			try {
+				if ((resultFile == null) || !Files.isRegularFile(resultFile)
+					|| !entry.resultHash.equals(ExtractionManifest.hash(resultFile))) {
+					return null;
+				}
+			} catch (final IOException e) {
+				return null;
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * @return whether the journal has an entry of the given run, regardless of its
+	 *         result file
+	 */
+	public synchronized boolean contains(int systemID, AlgorithmRun<?> run) {
+		final Entry entry = entries.get(getKey(systemID, run.getSystemIteration(), run.getAlgorithmIndex(),
+			run.getAlgorithmIteration()));
+		return (entry != null) && entry.algorithmName.equals(run.getAlgorithm().getFullName());
+	}
+
+	/**
+	 * Appends a finished run and writes it to disk immediately.
+	 */
+	public synchronized void add(int systemID, AlgorithmRun<?> run, long time, Path resultFile, List<String> data)
+		throws IOException {
+		if (writer == null) {
+			throw new IllegalStateException("Journal is read-only");
+		}
+		final String resultHash = (resultFile != null) && Files.isRegularFile(resultFile)
+			? ExtractionManifest.hash(resultFile)
+			: null;
+		final Entry entry = new Entry(run.getAlgorithm().getFullName(), run.getResultSize(), time, resultHash, data);
+		entries.put(getKey(systemID, run.getSystemIteration(), run.getAlgorithmIndex(), run.getAlgorithmIteration()),
+			entry);
+
+		final StringBuilder sb = new StringBuilder();
+		sb.append(systemID);
+		sb.append('\t');
+		sb.append(run.getSystemIteration());
+		sb.append('\t');
+		sb.append(run.getAlgorithmIndex());
+		sb.append('\t');
+		sb.append(run.getAlgorithmIteration());
+		sb.append('\t');
+		sb.append(entry.algorithmName);
+		sb.append('\t');
+		sb.append(entry.resultSize);
+		sb.append('\t');
+		sb.append(entry.time);
+		sb.append('\t');
+		sb.append(resultHash != null ? resultHash : NO_HASH);
+		for (final String value : data) {
+			sb.append('\t');
+			sb.append(value);
+		}
+		sb.append('\n');
+		writer.write(sb.toString());
+		writer.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (writer != null) {
+			writer.close();
+		}
+	}
+
+}
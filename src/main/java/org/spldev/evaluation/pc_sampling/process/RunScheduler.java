@@ -0,0 +1,118 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.util.concurrent.*;
+
+import org.spldev.util.logging.*;
+
+/**
+ * Executes jobs concurrently while keeping the memory reserved by all running
+ * child processes within a given budget.
+ */
+public class RunScheduler implements AutoCloseable {
+
+	private static final long RECLAIM_INTERVAL = 1000;
+
+	private final ExecutorService executor;
+	private final Semaphore memory;
+	private final int runMemory;
+	private Runnable memoryReclaimer;
+
+	/**
+	 * @param parallelism  the maximum number of concurrent jobs
+	 * @param memoryBudget the memory available for child processes in MB (0 for
+	 *                     no limit)
+	 * @param runMemory    the memory reserved for each child process in MB
+	 */
+	public RunScheduler(int parallelism, int memoryBudget, int runMemory) {
+		executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+		if (memoryBudget > 0) {
+			memory = new Semaphore(memoryBudget, true);
+			this.runMemory = Math.max(1, Math.min(runMemory, memoryBudget));
+			Logger.logInfo("Concurrent runs: " + Math.min(Math.max(1, parallelism), memoryBudget / this.runMemory));
+		} else {
+			memory = null;
+			this.runMemory = 0;
+			Logger.logInfo("Concurrent runs: " + Math.max(1, parallelism));
+		}
+	}
+
+	public <T> Future<T> submit(Callable<T> job) {
+		return executor.submit(job);
+	}
+
+	/**
+	 * Sets a task that frees reserved memory that is not used by a running job,
+	 * such as the memory of idle worker JVMs. It is called repeatedly while a
+	 * reservation cannot be granted.
+	 */
+	public void setMemoryReclaimer(Runnable memoryReclaimer) {
+		this.memoryReclaimer = memoryReclaimer;
+	}
+
+	/**
+	 * Reserves the memory of one child process until {@link #release()} is called.
+	 */
+	public void reserve() throws InterruptedException {
+		if ((memory != null) && !memory.tryAcquire(runMemory)) {
+			do {
+				if (memoryReclaimer != null) {
+					memoryReclaimer.run();
+				}
+			} while (!memory.tryAcquire(runMemory, RECLAIM_INTERVAL, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	public void release() {
+		if (memory != null) {
+			memory.release(runMemory);
+		}
+	}
+
+	/**
+	 * @return whether a job is waiting for a reservation
+	 */
+	public boolean isMemoryRequested() {
+		return (memory != null) && memory.hasQueuedThreads();
+	}
+
+	/**
+	 * Executes the given task, which starts a child process, as soon as enough
+	 * memory is available.
+	 */
+	public <T> T run(Callable<T> task) throws Exception {
+		reserve();
+		try {
+			return task.call();
+		} finally {
+			release();
+		}
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+}
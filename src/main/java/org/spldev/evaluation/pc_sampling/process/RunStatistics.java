@@ -0,0 +1,81 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.util.*;
+
+/**
+ * Size and time bounds of the runs of a reference algorithm within one system
+ * iteration. Used to derive the budgets of dependent algorithms. Each run is
+ * recorded by its algorithm index and iteration, so recording a run again (e.g.,
+ * when restoring it) does not change the bounds.
+ */
+public class RunStatistics {
+
+	private final Map<String, long[]> runs = new HashMap<>();
+
+	public void update(AlgorithmRun<?> run, int size, long time) {
+		update(run.getAlgorithmIndex(), run.getAlgorithmIteration(), size, time);
+	}
+
+	synchronized void update(int algorithmIndex, int algorithmIteration, int size, long time) {
+		runs.put(algorithmIndex + "_" + algorithmIteration, new long[] { size, time });
+	}
+
+	public synchronized boolean isEmpty() {
+		return runs.isEmpty();
+	}
+
+	public synchronized int getMinSize() {
+		int minSize = Integer.MAX_VALUE;
+		for (final long[] values : runs.values()) {
+			minSize = Math.min(minSize, (int) values[0]);
+		}
+		return minSize;
+	}
+
+	public synchronized int getMaxSize() {
+		int maxSize = -1;
+		for (final long[] values : runs.values()) {
+			maxSize = Math.max(maxSize, (int) values[0]);
+		}
+		return maxSize;
+	}
+
+	public synchronized long getMinTime() {
+		long minTime = Long.MAX_VALUE;
+		for (final long[] values : runs.values()) {
+			minTime = Math.min(minTime, values[1]);
+		}
+		return minTime;
+	}
+
+	public synchronized long getMaxTime() {
+		long maxTime = -1;
+		for (final long[] values : runs.values()) {
+			maxTime = Math.max(maxTime, values[1]);
+		}
+		return maxTime;
+	}
+
+}
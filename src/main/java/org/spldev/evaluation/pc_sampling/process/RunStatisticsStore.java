@@ -0,0 +1,113 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.spldev.util.logging.*;
+
+/**
+ * The {@link RunStatistics} of all system iterations. Updates are thread-safe
+ * and appended to a file, so the statistics survive the end of the process and
+ * can be restored when resuming an evaluation.
+ */
+public class RunStatisticsStore implements AutoCloseable {
+
+	private final Map<String, RunStatistics> statistics = new ConcurrentHashMap<>();
+	private final Writer writer;
+
+	/**
+	 * Creates a store that is kept in memory only.
+	 */
+	public RunStatisticsStore() {
+		writer = null;
+	}
+
+	/**
+	 * @param resume whether the statistics in an existing file are kept.
+	 *               Otherwise, the file is started anew.
+	 */
+	public RunStatisticsStore(Path file, boolean resume) throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		boolean completeLastLine = true;
+		if (resume && Files.isRegularFile(file)) {
+			final String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			for (final String line : content.split("\n")) {
+				readLine(line);
+			}
+			completeLastLine = content.isEmpty() || content.endsWith("\n");
+		}
+		writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+			resume ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		if (!completeLastLine) {
+			writer.write('\n');
+			writer.flush();
+		}
+	}
+
+	private void readLine(String line) {
+		final String[] values = line.split("\t");
+		if (values.length == 6) {
+			try {
+				get(Integer.parseInt(values[0]), Integer.parseInt(values[1])).update(Integer.parseInt(values[2]),
+					Integer.parseInt(values[3]), Integer.parseInt(values[4]), Long.parseLong(values[5]));
+			} catch (final NumberFormatException e) {
+				Logger.logDebug("Skipping malformed statistics line");
+			}
+		}
+	}
+
+	public RunStatistics get(int systemID, int systemIteration) {
+		return statistics.computeIfAbsent(systemID + "_" + systemIteration, key -> new RunStatistics());
+	}
+
+	/**
+	 * Records the size and time of the given run and writes them to disk
+	 * immediately.
+	 */
+	public void update(int systemID, AlgorithmRun<?> run, int size, long time) throws IOException {
+		get(systemID, run.getSystemIteration()).update(run, size, time);
+		if (writer != null) {
+			final String line = systemID + "\t" + run.getSystemIteration() + "\t" + run.getAlgorithmIndex() + "\t"
+				+ run.getAlgorithmIteration() + "\t" + size + "\t" + time + "\n";
+			synchronized (writer) {
+				writer.write(line);
+				writer.flush();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (writer != null) {
+			synchronized (writer) {
+				writer.close();
+			}
+		}
+	}
+
+}
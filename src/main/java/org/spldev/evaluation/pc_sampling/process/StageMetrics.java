@@ -0,0 +1,162 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.util.*;
+
+/**
+ * Collects latency histograms of the internal stages of an evaluation per
+ * system. Latencies are recorded in ns into log-linear buckets with a relative
+ * error of at most 1/16, so recording is cheap and needs constant memory.
+ */
+public class StageMetrics {
+
+	public static final List<String> CSV_HEADER = Collections.unmodifiableList(
+		Arrays.asList("ModelID", "Stage", "Count", "Total", "Mean", "P50", "P90", "P99", "Max"));
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) << SUB_BUCKET_BITS;
+
+	/**
+	 * Measures a single execution of a stage. Is stopped in a finally block, so
+	 * failed executions are recorded as well.
+	 */
+	public class Timer {
+
+		private final Histogram histogram;
+		private final long startTime = System.nanoTime();
+
+		private Timer(Histogram histogram) {
+			this.histogram = histogram;
+		}
+
+		public void stop() {
+			histogram.record(System.nanoTime() - startTime);
+		}
+	}
+
+	public static class Histogram {
+
+		private final long[] counts = new long[BUCKETS];
+		private long count = 0;
+		private long total = 0;
+		private long max = 0;
+
+		public synchronized void record(long value) {
+			value = Math.max(0, value);
+			counts[getBucket(value)]++;
+			count++;
+			total += value;
+			max = Math.max(max, value);
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized long getTotal() {
+			return total;
+		}
+
+		public synchronized long getMean() {
+			return count > 0 ? total / count : 0;
+		}
+
+		public synchronized long getMax() {
+			return max;
+		}
+
+		/**
+		 * @param quantile a value between 0 and 1
+		 * @return an upper bound of the given quantile of all recorded values
+		 */
+		public synchronized long getPercentile(double quantile) {
+			final long rank = Math.max(1, (long) Math.ceil(quantile * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(getUpperBound(i), max);
+				}
+			}
+			return max;
+		}
+
+		private static int getBucket(long value) {
+			if (value < SUB_BUCKETS) {
+				return (int) value;
+			}
+			final int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+			return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+		}
+
+		private static long getUpperBound(int bucket) {
+			if (bucket < SUB_BUCKETS) {
+				return bucket;
+			}
+			final int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+			final long subBucket = (bucket & (SUB_BUCKETS - 1)) | SUB_BUCKETS;
+			return ((subBucket + 1) << shift) - 1;
+		}
+	}
+
+	// Systems and stages in the order of their first occurrence
+	private final Map<Object, Map<String, Histogram>> histograms = new LinkedHashMap<>();
+
+	public synchronized Histogram getHistogram(Object systemID, String stage) {
+		return histograms.computeIfAbsent(systemID, k -> new LinkedHashMap<>()).computeIfAbsent(stage,
+			k -> new Histogram());
+	}
+
+	public Timer start(Object systemID, String stage) {
+		return new Timer(getHistogram(systemID, stage));
+	}
+
+	/**
+	 * @param time the latency in ns
+	 */
+	public void record(Object systemID, String stage, long time) {
+		getHistogram(systemID, stage).record(time);
+	}
+
+	/**
+	 * Removes all histograms recorded so far.
+	 *
+	 * @return one row per system and stage matching {@link #CSV_HEADER}
+	 */
+	public synchronized List<List<Object>> drain() {
+		final List<List<Object>> rows = new ArrayList<>();
+		for (final Map.Entry<Object, Map<String, Histogram>> system : histograms.entrySet()) {
+			for (final Map.Entry<String, Histogram> stage : system.getValue().entrySet()) {
+				final Histogram histogram = stage.getValue();
+				rows.add(Arrays.asList(system.getKey(), stage.getKey(), histogram.getCount(), histogram.getTotal(),
+					histogram.getMean(), histogram.getPercentile(0.5), histogram.getPercentile(0.9),
+					histogram.getPercentile(0.99), histogram.getMax()));
+			}
+		}
+		histograms.clear();
+		return rows;
+	}
+
+}
@@ -0,0 +1,337 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+/**
+ * Main class of a long-lived tool JVM. Loads the tool's class path once and
+ * then executes the main methods requested via standard input one after
+ * another.<br>
+ * Protocol (one message per line on standard input and output):
+ * <ul>
+ * <li>worker: {@code READY}</li>
+ * <li>harness: {@code <main class>\t<argument>\t...} or {@code EXIT}</li>
+ * <li>worker: {@code OUT <line>} and {@code ERR <line>} for the tool's output,
+ * followed by {@code DONE <exit code> <algorithm time in ns> <used heap in
+ * bytes>}</li>
+ * </ul>
+ * Calls of {@link System#exit(int)} by the tool end the current job, not the
+ * worker. To this end, the class loader of the tool redirects these calls to
+ * {@link Exit#exit(int)} when loading the tool's classes.
+ */
+public class ToolWorker {
+
+	public static final String READY = "READY";
+	public static final String EXIT = "EXIT";
+	public static final String DONE = "DONE";
+	public static final String OUT = "OUT ";
+	public static final String ERR = "ERR ";
+	public static final String SEPARATOR = "\t";
+
+	// An error, so that tools catching exceptions do not swallow it
+	private static class ExitError extends Error {
+		private static final long serialVersionUID = 1L;
+		private final int status;
+
+		public ExitError(int status) {
+			this.status = status;
+		}
+	}
+
+	/**
+	 * Target of the redirected calls of {@link System#exit(int)} in the tool's
+	 * classes.
+	 */
+	public static final class Exit {
+
+		public static final String INTERNAL_NAME = Exit.class.getName().replace('.', '/');
+
+		private Exit() {
+		}
+
+		public static void exit(int status) {
+			if (trapExit) {
+				throw new ExitError(status);
+			}
+			System.exit(status);
+		}
+	}
+
+	/**
+	 * Loads the classes of a tool and redirects their calls of
+	 * {@link System#exit(int)} to {@link Exit#exit(int)}.
+	 */
+	private static class ToolClassLoader extends URLClassLoader {
+
+		public ToolClassLoader(URL[] urls) {
+			super(urls, ClassLoader.getPlatformClassLoader());
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (Exit.class.getName().equals(name)) {
+				return Exit.class;
+			}
+			return super.loadClass(name, resolve);
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			final URL resource = findResource(name.replace('.', '/') + ".class");
+			if (resource == null) {
+				throw new ClassNotFoundException(name);
+			}
+			final byte[] classFile;
+			try (InputStream in = resource.openStream()) {
+				classFile = redirectExit(in.readAllBytes());
+			} catch (final IOException e) {
+				throw new ClassNotFoundException(name, e);
+			}
+			final int packageEnd = name.lastIndexOf('.');
+			if (packageEnd > 0) {
+				final String packageName = name.substring(0, packageEnd);
+				if (getDefinedPackage(packageName) == null) {
+					try {
+						definePackage(packageName, null, null, null, null, null, null, null);
+					} catch (final IllegalArgumentException e) {
+						// Defined concurrently
+					}
+				}
+			}
+			return defineClass(name, classFile, 0, classFile.length);
+		}
+	}
+
+	private static class PrefixStream extends OutputStream {
+		private final PrintStream out;
+		private final String prefix;
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+		public PrefixStream(PrintStream out, String prefix) {
+			this.out = out;
+			this.prefix = prefix;
+		}
+
+		@Override
+		public synchronized void write(int b) {
+			if (b == '\n') {
+				flushLine();
+			} else if (b != '\r') {
+				line.write(b);
+			}
+		}
+
+		@Override
+		public synchronized void flush() {
+			if (line.size() > 0) {
+				flushLine();
+			}
+		}
+
+		private void flushLine() {
+			synchronized (out) {
+				out.println(prefix + line.toString(StandardCharsets.UTF_8));
+			}
+			line.reset();
+		}
+	}
+
+	private static volatile boolean trapExit = false;
+
+	public static void main(String[] args) throws Exception {
+		final PrintStream protocol = new PrintStream(new FileOutputStream(FileDescriptor.out), true,
+			StandardCharsets.UTF_8);
+		final ClassLoader toolLoader = new ToolClassLoader(expandClassPath(args[0]));
+		Thread.currentThread().setContextClassLoader(toolLoader);
+
+		final PrefixStream out = new PrefixStream(protocol, OUT);
+		final PrefixStream err = new PrefixStream(protocol, ERR);
+		System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+		System.setErr(new PrintStream(err, true, StandardCharsets.UTF_8));
+
+		final BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		protocol.println(READY);
+		for (String line = in.readLine(); (line != null) && !EXIT.equals(line); line = in.readLine()) {
+			final String[] job = line.split(SEPARATOR, -1);
+			int exitCode = 0;
+			final long startTime = System.nanoTime();
+			trapExit = true;
+			try {
+				final Method main = toolLoader.loadClass(job[0]).getMethod("main", String[].class);
+				main.invoke(null, (Object) Arrays.copyOfRange(job, 1, job.length));
+			} catch (final InvocationTargetException e) {
+				if (e.getCause() instanceof ExitError) {
+					exitCode = ((ExitError) e.getCause()).status;
+				} else {
+					e.getCause().printStackTrace();
+					exitCode = 1;
+				}
+			} catch (final ReflectiveOperationException e) {
+				e.printStackTrace();
+				exitCode = 1;
+			} finally {
+				trapExit = false;
+			}
+			final long algorithmTime = System.nanoTime() - startTime;
+			System.out.flush();
+			System.err.flush();
+			out.flush();
+			err.flush();
+
+			System.gc();
+			final Runtime runtime = Runtime.getRuntime();
+			final long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+			protocol.println(DONE + " " + exitCode + " " + algorithmTime + " " + usedHeap);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Points all method references to {@code java/lang/System.exit(I)V} in the
+	 * constant pool of the given class file to {@link Exit} instead. The
+	 * referenced class is appended to the constant pool, so no other index
+	 * changes.
+	 *
+	 * @return the changed class file or the given one, if it does not call
+	 *         {@link System#exit(int)}
+	 */
+	static byte[] redirectExit(byte[] classFile) {
+		final ByteBuffer buffer = ByteBuffer.wrap(classFile);
+		buffer.position(8);
+		final int count = buffer.getShort() & 0xFFFF;
+		final String[] utf8 = new String[count];
+		final int[] first = new int[count];
+		final int[] second = new int[count];
+		final List<Integer> methodRefs = new ArrayList<>();
+		final List<Integer> methodRefOffsets = new ArrayList<>();
+		for (int i = 1; i < count; i++) {
+			final int offset = buffer.position();
+			final int tag = buffer.get();
+			switch (tag) {
+			case 1:
+				final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+				buffer.get(bytes);
+				utf8[i] = new String(bytes, StandardCharsets.UTF_8);
+				break;
+			case 7:
+			case 8:
+			case 16:
+			case 19:
+			case 20:
+				first[i] = buffer.getShort() & 0xFFFF;
+				break;
+			case 15:
+				buffer.get();
+				buffer.getShort();
+				break;
+			case 3:
+			case 4:
+				buffer.getInt();
+				break;
+			case 5:
+			case 6:
+				buffer.getLong();
+				// Takes two entries
+				i++;
+				break;
+			case 9:
+			case 10:
+			case 11:
+			case 12:
+			case 17:
+			case 18:
+				first[i] = buffer.getShort() & 0xFFFF;
+				second[i] = buffer.getShort() & 0xFFFF;
+				if (tag == 10) {
+					methodRefs.add(i);
+					methodRefOffsets.add(offset);
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+			}
+		}
+		final int poolEnd = buffer.position();
+
+		final List<Integer> exitRefOffsets = new ArrayList<>();
+		for (int i = 0; i < methodRefs.size(); i++) {
+			final int ref = methodRefs.get(i);
+			final int nameAndType = second[ref];
+			if ("java/lang/System".equals(utf8[first[first[ref]]]) && "exit".equals(utf8[first[nameAndType]])
+				&& "(I)V".equals(utf8[second[nameAndType]])) {
+				exitRefOffsets.add(methodRefOffsets.get(i));
+			}
+		}
+		if (exitRefOffsets.isEmpty()) {
+			return classFile;
+		}
+
+		final byte[] name = Exit.INTERNAL_NAME.getBytes(StandardCharsets.UTF_8);
+		final int nameIndex = count;
+		final int classIndex = count + 1;
+		final ByteBuffer result = ByteBuffer.allocate(classFile.length + 3 + name.length + 3);
+		result.put(classFile, 0, poolEnd);
+		result.putShort(8, (short) (count + 2));
+		for (final int offset : exitRefOffsets) {
+			result.putShort(offset + 1, (short) classIndex);
+		}
+		result.put((byte) 1);
+		result.putShort((short) name.length);
+		result.put(name);
+		result.put((byte) 7);
+		result.putShort((short) nameIndex);
+		result.put(classFile, poolEnd, classFile.length - poolEnd);
+		return result.array();
+	}
+
+	/**
+	 * Resolves a class path in which entries may end with {@code *} to denote all
+	 * jar files in a directory.
+	 */
+	public static URL[] expandClassPath(String classPath) throws IOException {
+		final List<URL> urls = new ArrayList<>();
+		for (final String entry : classPath.split(File.pathSeparator)) {
+			if (entry.endsWith("*")) {
+				final Path dir = Paths.get(entry.substring(0, entry.length() - 1));
+				try (Stream<Path> files = Files.list(dir)) {
+					for (final Path file : files.filter(file -> file.getFileName().toString().endsWith(".jar"))
+						.sorted().collect(Collectors.toList())) {
+						urls.add(file.toUri().toURL());
+					}
+				}
+			} else if (!entry.isEmpty()) {
+				urls.add(Paths.get(entry).toUri().toURL());
+			}
+		}
+		return urls.toArray(new URL[0]);
+	}
+
+}
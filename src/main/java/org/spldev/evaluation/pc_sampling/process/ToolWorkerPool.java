@@ -0,0 +1,250 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.spldev.evaluation.process.*;
+import org.spldev.util.logging.*;
+
+/**
+ * Executes algorithms that start a Java tool in pre-warmed, long-lived
+ * {@link ToolWorker} JVMs instead of a new JVM per run. Workers are kept per
+ * JVM configuration (options and class path) and are replaced after a given
+ * number of jobs, when their heap has grown beyond a limit, or when a job did
+ * not finish in time. Each worker, running or idle, holds a memory reservation
+ * of the {@link RunScheduler}. Idle workers are shut down when the scheduler
+ * needs their memory for another run or when there are more idle workers than
+ * concurrent runs.
+ */
+public class ToolWorkerPool implements AutoCloseable {
+
+	private final Map<String, Deque<ToolWorkerProcess>> idleWorkers = new LinkedHashMap<>();
+	private final RunScheduler scheduler;
+	private final int maxJobs;
+	private final long maxHeap;
+	private final int maxIdleWorkers;
+	private int idleWorkerCount;
+	private long timeout = Long.MAX_VALUE;
+	private ResourceMonitor resourceMonitor;
+
+	/**
+	 * @param scheduler      the scheduler that reserves the memory of the workers
+	 * @param maxJobs        the number of jobs after which a worker is replaced
+	 * @param maxHeap        the used heap in MB after which a worker is replaced
+	 * @param maxIdleWorkers the maximum number of idle workers
+	 */
+	public ToolWorkerPool(RunScheduler scheduler, int maxJobs, int maxHeap, int maxIdleWorkers) {
+		this.scheduler = scheduler;
+		this.maxJobs = maxJobs;
+		this.maxHeap = maxHeap * 1024L * 1024L;
+		this.maxIdleWorkers = Math.max(1, maxIdleWorkers);
+		scheduler.setMemoryReclaimer(this::shutdownIdleWorkers);
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public void setResourceMonitor(ResourceMonitor resourceMonitor) {
+		this.resourceMonitor = resourceMonitor;
+	}
+
+	/**
+	 * Checks whether the command of an algorithm has the form {@code java
+	 * [options] -cp <class path> <main class> [arguments]}.
+	 */
+	public static boolean isSupported(List<String> command) {
+		final int classPathIndex = command.indexOf("-cp");
+		return !command.isEmpty() && "java".equals(command.get(0)) && (classPathIndex > 0)
+			&& (command.size() > (classPathIndex + 2));
+	}
+
+	/**
+	 * Counterpart of {@link ProcessRunner#run(Algorithm)}. In addition, records
+	 * the startup, algorithm, and parse time and the resource usage of the given
+	 * run.
+	 */
+	public <R> Result<R> run(Algorithm<R> algorithm, AlgorithmRun<R> run) {
+		return run(algorithm, run, timeout);
+	}
+
+	/**
+	 * Runs the given algorithm with a timeout that differs from the timeout of the
+	 * pool.
+	 */
+	public <R> Result<R> run(Algorithm<R> algorithm, AlgorithmRun<R> run, long timeout) {
+		final Result<R> result = new Result<>();
+		boolean terminatedInTime = false;
+		boolean noError = false;
+		try {
+			algorithm.preProcess();
+			final List<String> command = algorithm.getCommandElements();
+			if (!isSupported(command)) {
+				throw new IllegalArgumentException("Not a Java command: " + command);
+			}
+			final int classPathIndex = command.indexOf("-cp");
+			// A GC log file of the algorithm is replaced by a log file of the worker
+			final List<String> jvmOptions = new ArrayList<>(command.subList(1, classPathIndex));
+			final boolean gcLogging = jvmOptions.removeIf(ResourceMonitor::isGCLogOption);
+			final String classPath = command.get(classPathIndex + 1);
+			final String mainClass = command.get(classPathIndex + 2);
+			final List<String> arguments = command.subList(classPathIndex + 3, command.size());
+			final String key = jvmOptions + File.pathSeparator + classPath + File.pathSeparator + gcLogging;
+
+			final long startTime = System.nanoTime();
+			ToolWorkerProcess worker = acquire(key);
+			long startupTime = 0;
+			if (worker == null) {
+				scheduler.reserve();
+				try {
+					worker = new ToolWorkerProcess(jvmOptions, classPath, timeout,
+						gcLogging ? Files.createTempFile("tool-worker-gc", ".log") : null);
+				} catch (final Exception e) {
+					scheduler.release();
+					throw e;
+				}
+				startupTime = worker.getStartupTime();
+			}
+			final ResourceMonitor.Measurement measurement = resourceMonitor != null
+				? resourceMonitor.start(worker.getPid())
+				: null;
+			final long remainingTimeout = Math.max(0, timeout - ((System.nanoTime() - startTime) / 1_000_000L));
+			final ToolWorkerProcess.JobResult jobResult;
+			try {
+				jobResult = worker.run(mainClass, arguments, remainingTimeout);
+			} catch (final InterruptedException e) {
+				worker.destroy();
+				scheduler.release();
+				throw e;
+			}
+			final long time = (System.nanoTime() - startTime) / 1_000_000L;
+			run.setResourceUsage(measurement);
+			run.setGCTime(worker.readGCPauseTime());
+
+			terminatedInTime = jobResult.isTerminatedInTime();
+			noError = jobResult.getErrors().isEmpty() && (jobResult.getExitCode() == 0);
+			result.setTime(time);
+			run.setStartupTime(startupTime);
+			if (jobResult.getAlgorithmTime() >= 0) {
+				run.setAlgorithmTime(jobResult.getAlgorithmTime() / 1_000_000L);
+			}
+			release(key, worker, jobResult);
+
+			if (terminatedInTime) {
+				try {
+					final long parseStartTime = System.nanoTime();
+					result.setResult(algorithm.parseResults());
+					run.setParseTime(System.nanoTime() - parseStartTime);
+				} catch (final Exception e) {
+					Logger.logError(e);
+					noError = false;
+				}
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final Exception e) {
+			Logger.logError(e);
+		} finally {
+			try {
+				algorithm.postProcess();
+			} catch (final Exception e) {
+				Logger.logError(e);
+			}
+		}
+		result.setTerminatedInTime(terminatedInTime);
+		result.setNoError(noError);
+		Logger.logInfo("In Time: " + terminatedInTime + ", No Error: " + noError);
+		return result;
+	}
+
+	private synchronized ToolWorkerProcess acquire(String key) {
+		final Deque<ToolWorkerProcess> workers = idleWorkers.get(key);
+		while ((workers != null) && !workers.isEmpty()) {
+			final ToolWorkerProcess worker = workers.pop();
+			idleWorkerCount--;
+			if (worker.isAlive()) {
+				return worker;
+			}
+			scheduler.release();
+		}
+		return null;
+	}
+
+	private synchronized void release(String key, ToolWorkerProcess worker, ToolWorkerProcess.JobResult jobResult) {
+		if (!worker.isAlive() || !jobResult.isTerminatedInTime()) {
+			worker.destroy();
+			scheduler.release();
+		} else if ((worker.getJobCount() >= maxJobs) || (jobResult.getUsedHeap() > maxHeap)
+			|| scheduler.isMemoryRequested()) {
+			worker.shutdown();
+			scheduler.release();
+		} else {
+			if (idleWorkerCount >= maxIdleWorkers) {
+				shutdownIdleWorker();
+			}
+			idleWorkers.computeIfAbsent(key, k -> new ArrayDeque<>()).push(worker);
+			idleWorkerCount++;
+		}
+	}
+
+	/**
+	 * Shuts down the least recently used idle worker.
+	 */
+	private void shutdownIdleWorker() {
+		for (final Deque<ToolWorkerProcess> workers : idleWorkers.values()) {
+			if (!workers.isEmpty()) {
+				workers.removeLast().shutdown();
+				idleWorkerCount--;
+				scheduler.release();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Shuts down all idle workers and releases their memory reservations.
+	 */
+	public synchronized void shutdownIdleWorkers() {
+		for (final Deque<ToolWorkerProcess> workers : idleWorkers.values()) {
+			for (final ToolWorkerProcess worker : workers) {
+				worker.shutdown();
+				scheduler.release();
+			}
+		}
+		idleWorkers.clear();
+		idleWorkerCount = 0;
+	}
+
+	@Override
+	public void close() {
+		shutdownIdleWorkers();
+	}
+
+}
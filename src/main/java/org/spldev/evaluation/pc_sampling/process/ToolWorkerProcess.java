@@ -0,0 +1,271 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.spldev.util.logging.*;
+
+/**
+ * Harness side of a {@link ToolWorker} process.
+ */
+public class ToolWorkerProcess {
+
+	/**
+	 * Outcome of a single job.
+	 */
+	public static class JobResult {
+		private final boolean terminatedInTime;
+		private final int exitCode;
+		private final long algorithmTime;
+		private final long usedHeap;
+		private final List<String> errors;
+
+		private JobResult(boolean terminatedInTime, int exitCode, long algorithmTime, long usedHeap,
+			List<String> errors) {
+			this.terminatedInTime = terminatedInTime;
+			this.exitCode = exitCode;
+			this.algorithmTime = algorithmTime;
+			this.usedHeap = usedHeap;
+			this.errors = errors;
+		}
+
+		public boolean isTerminatedInTime() {
+			return terminatedInTime;
+		}
+
+		public int getExitCode() {
+			return exitCode;
+		}
+
+		/**
+		 * @return the time spent in the tool's main method in ns
+		 */
+		public long getAlgorithmTime() {
+			return algorithmTime;
+		}
+
+		/**
+		 * @return the used heap of the worker after the job in bytes
+		 */
+		public long getUsedHeap() {
+			return usedHeap;
+		}
+
+		public List<String> getErrors() {
+			return errors;
+		}
+	}
+
+	private static final String END_OF_STREAM = new String("EOF");
+
+	private final Process process;
+	private final PrintStream in;
+	private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+	private final long startupTime;
+	private final Path gcLogFile;
+
+	private int jobCount = 0;
+	private long gcLogOffset = 0;
+
+	/**
+	 * Starts a new worker and waits until it is ready.
+	 *
+	 * @param jvmOptions    options for the worker JVM
+	 * @param toolClassPath the class path of the tool
+	 * @param timeout       the maximum time to wait for the worker in ms
+	 */
+	public ToolWorkerProcess(List<String> jvmOptions, String toolClassPath, long timeout)
+		throws IOException, InterruptedException, TimeoutException {
+		this(jvmOptions, toolClassPath, timeout, null);
+	}
+
+	/**
+	 * Starts a new worker that logs its GC events and waits until it is ready.
+	 *
+	 * @param gcLogFile the file to which the worker writes its GC events or
+	 *                  {@code null}, if GC logging is disabled
+	 */
+	public ToolWorkerProcess(List<String> jvmOptions, String toolClassPath, long timeout, Path gcLogFile)
+		throws IOException, InterruptedException, TimeoutException {
+		this.gcLogFile = gcLogFile;
+		final List<String> command = new ArrayList<>();
+		command.add("java");
+		command.addAll(jvmOptions);
+		if (gcLogFile != null) {
+			command.add(ResourceMonitor.getGCLogOption(gcLogFile));
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(ToolWorker.class.getName());
+		command.add(toolClassPath);
+
+		final long startTime = System.nanoTime();
+		process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		in = new PrintStream(process.getOutputStream(), true, StandardCharsets.UTF_8);
+		final Thread reader = new Thread(this::readLines, "tool-worker-reader");
+		reader.setDaemon(true);
+		reader.start();
+
+		final String ready = lines.poll(timeout, TimeUnit.MILLISECONDS);
+		if (!ToolWorker.READY.equals(ready)) {
+			destroy();
+			throw new TimeoutException("Tool worker did not start");
+		}
+		startupTime = (System.nanoTime() - startTime) / 1_000_000L;
+		readGCPauseTime();
+	}
+
+	/**
+	 * @return the total GC pause time in ms since the last call or -1, if GC
+	 *         logging is disabled
+	 */
+	public long readGCPauseTime() {
+		if (gcLogFile == null) {
+			return -1;
+		}
+		try (SeekableByteChannel channel = Files.newByteChannel(gcLogFile, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size <= gcLogOffset) {
+				return 0;
+			}
+			final ByteBuffer buffer = ByteBuffer.allocate((int) (size - gcLogOffset));
+			channel.position(gcLogOffset);
+			while (buffer.hasRemaining() && (channel.read(buffer) >= 0)) {
+			}
+			// Only consume complete lines, the JVM may still be writing the last one
+			final String log = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+			final int end = log.lastIndexOf('\n') + 1;
+			gcLogOffset += log.substring(0, end).getBytes(StandardCharsets.UTF_8).length;
+			return ResourceMonitor.parseGCPauseTime(log.substring(0, end));
+		} catch (final IOException e) {
+			return -1;
+		}
+	}
+
+	private void readLines() {
+		try (BufferedReader out = new BufferedReader(
+			new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			for (String line = out.readLine(); line != null; line = out.readLine()) {
+				lines.add(line);
+			}
+		} catch (final IOException e) {
+		} finally {
+			lines.add(END_OF_STREAM);
+		}
+	}
+
+	/**
+	 * Executes the main method of a tool class and waits for it to finish.
+	 *
+	 * @param timeout the maximum time to wait in ms
+	 */
+	public JobResult run(String mainClass, List<String> arguments, long timeout) throws InterruptedException {
+		final StringBuilder job = new StringBuilder(mainClass);
+		for (final String argument : arguments) {
+			job.append(ToolWorker.SEPARATOR);
+			job.append(argument);
+		}
+		jobCount++;
+		in.println(job);
+
+		final List<String> errors = new ArrayList<>();
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		while (true) {
+			final String line = lines.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			if (line == null) {
+				destroy();
+				return new JobResult(false, -1, -1, -1, errors);
+			} else if (line == END_OF_STREAM) {
+				errors.add("Tool worker terminated unexpectedly");
+				return new JobResult(true, -1, -1, -1, errors);
+			} else if (line.startsWith(ToolWorker.OUT)) {
+				Logger.logDebug(line.substring(ToolWorker.OUT.length()));
+			} else if (line.startsWith(ToolWorker.ERR)) {
+				final String error = line.substring(ToolWorker.ERR.length());
+				Logger.logError(error);
+				errors.add(error);
+			} else if (line.startsWith(ToolWorker.DONE)) {
+				final String[] values = line.split(" ");
+				return new JobResult(true, Integer.parseInt(values[1]), Long.parseLong(values[2]),
+					Long.parseLong(values[3]), errors);
+			}
+		}
+	}
+
+	public boolean isAlive() {
+		return process.isAlive();
+	}
+
+	/**
+	 * @return the time needed to start the worker in ms
+	 */
+	public long getStartupTime() {
+		return startupTime;
+	}
+
+	public int getJobCount() {
+		return jobCount;
+	}
+
+	public long getPid() {
+		return process.pid();
+	}
+
+	public void shutdown() {
+		if (process.isAlive()) {
+			in.println(ToolWorker.EXIT);
+			try {
+				if (!process.waitFor(10, TimeUnit.SECONDS)) {
+					destroy();
+				}
+			} catch (final InterruptedException e) {
+				destroy();
+				Thread.currentThread().interrupt();
+			}
+		}
+		deleteGCLog();
+	}
+
+	public void destroy() {
+		process.destroyForcibly();
+		deleteGCLog();
+	}
+
+	private void deleteGCLog() {
+		if (gcLogFile != null) {
+			try {
+				Files.deleteIfExists(gcLogFile);
+			} catch (final IOException e) {
+				Logger.logError(e);
+			}
+		}
+	}
+
+}
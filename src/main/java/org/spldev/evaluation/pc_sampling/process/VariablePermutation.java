@@ -0,0 +1,138 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.util.*;
+
+import org.spldev.clauses.*;
+import org.spldev.clauses.LiteralList.*;
+import org.spldev.formula.structure.atomic.literal.*;
+
+/**
+ * Random renaming of the variables of a model, stored as a pair of index
+ * arrays. Clauses and solutions are translated by array lookups instead of
+ * name-based {@link VariableMap} lookups.
+ */
+public class VariablePermutation {
+
+	// forward[v] is the randomized index of the original variable v
+	private final int[] forward;
+	// inverse[v] is the original index of the randomized variable v
+	private final int[] inverse;
+
+	private VariablePermutation(int[] forward, int[] inverse) {
+		this.forward = forward;
+		this.inverse = inverse;
+	}
+
+	/**
+	 * Draws a random permutation in the same way as {@link CNF#randomize(Random)}
+	 * shuffles the variable names.
+	 */
+	public static VariablePermutation random(int variableCount, Random random) {
+		final int[] order = new int[variableCount];
+		for (int i = 0; i < variableCount; i++) {
+			order[i] = i + 1;
+		}
+		for (int i = variableCount; i > 1; i--) {
+			final int j = random.nextInt(i);
+			final int swap = order[i - 1];
+			order[i - 1] = order[j];
+			order[j] = swap;
+		}
+		final int[] forward = new int[variableCount + 1];
+		final int[] inverse = new int[variableCount + 1];
+		for (int i = 0; i < variableCount; i++) {
+			inverse[i + 1] = order[i];
+			forward[order[i]] = i + 1;
+		}
+		return new VariablePermutation(forward, inverse);
+	}
+
+	public int getVariableCount() {
+		return forward.length - 1;
+	}
+
+	public VariableMap apply(VariableMap variables) {
+		final List<String> names = variables.getNames();
+		final List<String> randomizedNames = new ArrayList<>(names.size());
+		for (int i = 1; i < inverse.length; i++) {
+			randomizedNames.add(names.get(inverse[i] - 1));
+		}
+		return VariableMap.fromNames(randomizedNames);
+	}
+
+	/**
+	 * Renames the variables of the given formula and shuffles its clauses. Yields
+	 * the same formula as {@link CNF#randomize(Random)}, if this permutation was
+	 * created with the same random generator.
+	 */
+	public CNF apply(CNF cnf, Random random) {
+		final ClauseList clauses = cnf.getClauses();
+		final ClauseList randomizedClauses = new ClauseList(clauses.size());
+		for (final LiteralList clause : clauses) {
+			randomizedClauses.add(apply(clause));
+		}
+		Collections.shuffle(randomizedClauses, random);
+		return new CNF(apply(cnf.getVariableMap()), randomizedClauses);
+	}
+
+	public ClauseList apply(ClauseList clauses) {
+		final ClauseList randomizedClauses = new ClauseList(clauses.size());
+		for (final LiteralList clause : clauses) {
+			randomizedClauses.add(apply(clause));
+		}
+		return randomizedClauses;
+	}
+
+	public LiteralList apply(LiteralList clause) {
+		return new LiteralList(map(clause.getLiterals(), forward), clause.getOrder(), true);
+	}
+
+	/**
+	 * Translates a solution of the randomized formula back to the original
+	 * variables.
+	 *
+	 * @return the solution in {@link Order#INDEX index order}
+	 */
+	public LiteralList revert(LiteralList solution) {
+		final int[] reverted = new int[getVariableCount()];
+		for (final int literal : solution.getLiterals()) {
+			if (literal != 0) {
+				final int variable = inverse[Math.abs(literal)];
+				reverted[variable - 1] = literal > 0 ? variable : -variable;
+			}
+		}
+		return new LiteralList(reverted, Order.INDEX, false);
+	}
+
+	private static int[] map(int[] literals, int[] permutation) {
+		final int[] mapped = new int[literals.length];
+		for (int i = 0; i < literals.length; i++) {
+			final int literal = literals[i];
+			mapped[i] = literal > 0 ? permutation[literal] : -permutation[-literal];
+		}
+		return mapped;
+	}
+
+}
@@ -0,0 +1,308 @@
+/* -----------------------------------------------------------------------------
+ * Evaluation-PC-Sampling - Program for the evaluation of PC-Sampling.
+ * Copyright (C) 2021  Sebastian Krieter
+ * 
+ * This file is part of Evaluation-PC-Sampling.
+ * 
+ * Evaluation-PC-Sampling is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ * 
+ * Evaluation-PC-Sampling is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Evaluation-PC-Sampling.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * See <https://github.com/skrieter/evaluation-pc-sampling> for further information.
+ * -----------------------------------------------------------------------------
+ */
+package org.spldev.evaluation.pc_sampling.process;
+
+import java.io.*;
+import java.lang.management.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import org.spldev.util.logging.*;
+
+/**
+ * Work queue in a directory shared by several worker processes, possibly on
+ * different machines.
+ * <ul>
+ * <li>{@code leases/<job>#<n>} marks a job as claimed by the worker named in
+ * the file. Its owner touches the file regularly (heartbeat). A lease that was
+ * not touched within the lease timeout is expired, so its job is requeued. The
+ * next worker claims the job by creating the lease with the next generation n,
+ * which only one worker can succeed in.</li>
+ * <li>{@code done/<job>} marks a job as finished and names the worker whose
+ * journal holds the results.</li>
+ * <li>{@code journals/<worker>.tsv} is the {@link RunJournal} of a worker and
+ * {@code journals/<worker>.statistics.tsv} its {@link RunStatisticsStore}.</li>
+ * </ul>
+ * All state changes rely on atomic file creation, links, and moves, so no
+ * locks are needed. Lease files are never deleted, so their generations stay
+ * consistent.
+ */
+public class WorkQueue implements AutoCloseable {
+
+	private static final String LEASES = "leases";
+	private static final String DONE = "done";
+	private static final String JOURNALS = "journals";
+
+	private final Path leaseDir, doneDir, journalDir;
+	private final String workerID;
+	private final long leaseTimeout;
+	private final long pollInterval;
+
+	private final Map<String, Integer> heldLeases = new ConcurrentHashMap<>();
+	private final Set<String> lostLeases = ConcurrentHashMap.newKeySet();
+	private volatile Consumer<String> leaseLossListener;
+	private final ScheduledExecutorService heartbeat;
+
+	private final Map<String, RunJournal> journals = new HashMap<>();
+	private final Map<String, FileTime> journalTimes = new HashMap<>();
+
+	/**
+	 * @param directory    the shared queue directory
+	 * @param workerID     the unique name of this process or {@code null} for a
+	 *                     name derived from host and process ID
+	 * @param leaseTimeout the time in ms after which a lease without heartbeat
+	 *                     expires
+	 */
+	public WorkQueue(Path directory, String workerID, long leaseTimeout) throws IOException {
+		leaseDir = directory.resolve(LEASES);
+		doneDir = directory.resolve(DONE);
+		journalDir = directory.resolve(JOURNALS);
+		Files.createDirectories(leaseDir);
+		Files.createDirectories(doneDir);
+		Files.createDirectories(journalDir);
+		this.workerID = getWorkerID(workerID);
+		this.leaseTimeout = leaseTimeout;
+		pollInterval = Math.max(100, Math.min(leaseTimeout / 4, 10000));
+		heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "heartbeat");
+			thread.setDaemon(true);
+			return thread;
+		});
+		heartbeat.scheduleWithFixedDelay(this::renewLeases, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param leaseLossListener called with the job, if this worker lost the lease
+	 *                          of a job it had claimed
+	 */
+	public void setLeaseLossListener(Consumer<String> leaseLossListener) {
+		this.leaseLossListener = leaseLossListener;
+	}
+
+	/**
+	 * @return whether another worker took over the given job from this worker
+	 */
+	public boolean isLeaseLost(String job) {
+		return lostLeases.contains(job);
+	}
+
+	/**
+	 * @return the given worker ID or, if it is empty, a name derived from host and
+	 *         process ID
+	 */
+	public static String getWorkerID(String workerID) {
+		return (workerID == null) || workerID.isEmpty()
+			? ManagementFactory.getRuntimeMXBean().getName().replaceAll("[^\\w.-]", "_")
+			: workerID;
+	}
+
+	public String getWorkerID() {
+		return workerID;
+	}
+
+	public Path getJournalFile() {
+		return getJournalFile(workerID);
+	}
+
+	public Path getStatisticsFile() {
+		return journalDir.resolve(workerID + ".statistics.tsv");
+	}
+
+	private Path getJournalFile(String worker) {
+		return journalDir.resolve(worker + ".tsv");
+	}
+
+	public boolean isDone(String job) {
+		return Files.exists(doneDir.resolve(job));
+	}
+
+	/**
+	 * @return the worker that finished the given job or {@code null}, if the job
+	 *         is not finished
+	 */
+	public String getFinishingWorker(String job) {
+		try {
+			return new String(Files.readAllBytes(doneDir.resolve(job)), StandardCharsets.UTF_8);
+		} catch (final NoSuchFileException e) {
+			return null;
+		} catch (final IOException e) {
+			Logger.logError(e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return the journal of the given worker, reread if it changed since the last
+	 *         call
+	 */
+	public synchronized RunJournal getJournal(String worker) throws IOException {
+		final Path file = getJournalFile(worker);
+		final FileTime time = Files.exists(file) ? Files.getLastModifiedTime(file) : null;
+		RunJournal journal = journals.get(worker);
+		if ((journal == null) || !Objects.equals(time, journalTimes.get(worker))) {
+			journal = RunJournal.read(file);
+			journals.put(worker, journal);
+			journalTimes.put(worker, time);
+		}
+		return journal;
+	}
+
+	/**
+	 * Tries to claim the given job. Succeeds, if the job is not finished and has no
+	 * valid lease of another worker.
+	 */
+	public boolean claim(String job) throws IOException {
+		if (isDone(job)) {
+			return false;
+		}
+		final int generation = getGeneration(job);
+		if ((generation >= 0) && !isExpired(getLease(job, generation))) {
+			return false;
+		}
+		try {
+			Files.write(getLease(job, generation + 1), workerID.getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		} catch (final FileAlreadyExistsException e) {
+			return false;
+		}
+		if (generation >= 0) {
+			Logger.logInfo("Requeued expired job " + job);
+		}
+		heldLeases.put(job, generation + 1);
+		// Another worker may have finished the job since the check above
+		if (isDone(job)) {
+			release(job);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Marks the given job as finished by this worker and gives up its lease. Fails,
+	 * if this worker lost the lease or another worker finished the job first.
+	 *
+	 * @return whether the results of this worker are the ones of the job
+	 */
+	public boolean complete(String job) throws IOException {
+		if (isLeaseLost(job)) {
+			release(job);
+			return false;
+		}
+		final Path temp = doneDir.resolve("." + job + "." + workerID);
+		Files.write(temp, workerID.getBytes(StandardCharsets.UTF_8));
+		try {
+			// Unlike a move, creating a link never replaces the marker of another worker
+			Files.createLink(doneDir.resolve(job), temp);
+			return true;
+		} catch (final FileAlreadyExistsException e) {
+			Logger.logError("Job " + job + " was already finished by " + getFinishingWorker(job));
+			return false;
+		} finally {
+			Files.deleteIfExists(temp);
+			release(job);
+		}
+	}
+
+	/**
+	 * Gives up the lease of the given job without finishing it. The lease is
+	 * expired immediately, so any worker can claim the job again.
+	 */
+	public void release(String job) {
+		lostLeases.remove(job);
+		final Integer generation = heldLeases.remove(job);
+		if (generation != null) {
+			try {
+				Files.setLastModifiedTime(getLease(job, generation), FileTime.fromMillis(0));
+			} catch (final IOException e) {
+				Logger.logError(e);
+			}
+		}
+	}
+
+	/**
+	 * Waits for one heartbeat interval.
+	 */
+	public void await() throws InterruptedException {
+		Thread.sleep(pollInterval);
+	}
+
+	private boolean isExpired(Path lease) throws IOException {
+		try {
+			return (System.currentTimeMillis() - Files.getLastModifiedTime(lease).toMillis()) > leaseTimeout;
+		} catch (final NoSuchFileException e) {
+			return false;
+		}
+	}
+
+	private Path getLease(String job, int generation) {
+		return leaseDir.resolve(job + "#" + generation);
+	}
+
+	/**
+	 * @return the generation of the current lease of the given job or -1, if the
+	 *         job was never claimed
+	 */
+	private int getGeneration(String job) {
+		int generation = -1;
+		while (Files.exists(getLease(job, generation + 1))) {
+			generation++;
+		}
+		return generation;
+	}
+
+	private void renewLeases() {
+		final FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+		for (final Map.Entry<String, Integer> entry : heldLeases.entrySet()) {
+			final String job = entry.getKey();
+			final int generation = entry.getValue();
+			try {
+				if (getGeneration(job) == generation) {
+					Files.setLastModifiedTime(getLease(job, generation), now);
+				} else {
+					heldLeases.remove(job);
+					lostLeases.add(job);
+					Logger.logError("Lost lease of job " + job);
+					final Consumer<String> listener = leaseLossListener;
+					if (listener != null) {
+						listener.accept(job);
+					}
+				}
+			} catch (final IOException e) {
+				Logger.logError(e);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		heartbeat.shutdownNow();
+		for (final String job : new ArrayList<>(heldLeases.keySet())) {
+			release(job);
+		}
+	}
+
+}